@@ -0,0 +1,106 @@
+package org.example.bench;
+
+import org.example.DatabaseManager;
+import org.example.SchemaMigrator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+
+// Отдельная база для бенчмарков на локальном PostgreSQL: создается, получает схему через SchemaMigrator и заполняется
+// синтетическими данными. Подключение задается через -Dbench.url, -Dbench.superUser, -Dbench.superPassword
+public final class BenchmarkDatabase {
+    static final String SERVER_URL = System.getProperty("bench.url", "jdbc:postgresql://localhost:5432/");
+    static final String DATABASE = System.getProperty("bench.database", "games_bench");
+    static final String SUPER_USER = System.getProperty("bench.superUser", "postgres");
+    static final String SUPER_PASSWORD = System.getProperty("bench.superPassword", "postgres");
+    static final String BENCH_USER = "bench_admin";
+    static final String BENCH_PASSWORD = "bench_admin";
+
+    private BenchmarkDatabase() {
+    }
+
+    // Заполняет games строками 1..rows; если там уже ровно столько строк, повторно не заполняет
+    public static void prepare(int rows) throws SQLException {
+        createDatabaseIfMissing();
+        try (Connection conn = superConnection(DATABASE);
+             Statement stmt = conn.createStatement()) {
+            SchemaMigrator.migrate(conn);
+            stmt.execute("DO $$ BEGIN "
+                    + "IF NOT EXISTS (SELECT 1 FROM pg_roles WHERE rolname = '" + BENCH_USER + "') THEN "
+                    + "CREATE USER " + BENCH_USER + " WITH LOGIN PASSWORD '" + BENCH_PASSWORD + "'; "
+                    + "END IF; END $$");
+            stmt.execute("GRANT admin_role TO " + BENCH_USER);
+
+            if (countRows(stmt) == rows && maxId(stmt) == rows) return;
+            stmt.execute("TRUNCATE games");
+            seed(stmt, 1, rows);
+            stmt.execute("VACUUM ANALYZE games");
+        }
+    }
+
+    // Названия вида "Game 123 <md5>": общий префикс дает широкий поиск, md5 - избирательный
+    static void seed(Statement stmt, int fromId, int toId) throws SQLException {
+        stmt.execute("INSERT INTO games (game_id, title, release_date, rating) "
+                + "SELECT i, 'Game ' || i || ' ' || md5(i::text), "
+                + "DATE '1980-01-01' + (i % 16000), round((i % 100)::numeric / 10, 1) "
+                + "FROM generate_series(" + fromId + ", " + toId + ") AS i");
+    }
+
+    public static DatabaseManager connect() throws SQLException {
+        DatabaseManager dbManager = new DatabaseManager(SERVER_URL + DATABASE);
+        dbManager.connect(BENCH_USER, BENCH_PASSWORD);
+        return dbManager;
+    }
+
+    static Connection superConnection(String database) throws SQLException {
+        return DriverManager.getConnection(SERVER_URL + database, SUPER_USER, SUPER_PASSWORD);
+    }
+
+    static void execute(String sql) throws SQLException {
+        try (Connection conn = superConnection(DATABASE);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    static String md5(int id) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5")
+                    .digest(Integer.toString(id).getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void createDatabaseIfMissing() throws SQLException {
+        try (Connection conn = superConnection("postgres");
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM pg_database WHERE datname = '" + DATABASE + "'")) {
+            if (!rs.next()) {
+                stmt.execute("CREATE DATABASE " + DATABASE);
+            }
+        }
+    }
+
+    private static long countRows(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM games")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static long maxId(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT coalesce(max(game_id), 0) FROM games")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
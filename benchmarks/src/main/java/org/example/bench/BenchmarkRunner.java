@@ -0,0 +1,37 @@
+package org.example.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Запуск: java -jar target/benchmarks.jar [параметры JMH]. Принимает все ключи JMH, например -t 8 для
+// нескольких потоков или -p rows=10000 для одного размера таблицы. По умолчанию добавляет профилировщик
+// аллокаций и сохраняет результаты в results/jmh-<время>.json для сравнения между запусками
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        String resultFile = commandLine.getResult().orElse(defaultResultFile());
+        new File(resultFile).getAbsoluteFile().getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+
+    private static String defaultResultFile() {
+        return "results/jmh-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json";
+    }
+}
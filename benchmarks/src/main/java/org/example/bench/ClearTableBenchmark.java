@@ -0,0 +1,64 @@
+package org.example.bench;
+
+import org.example.DatabaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// clearTable уничтожает данные, поэтому каждый вызов замеряется отдельно, а таблица заполняется заново перед ним
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Threads(1)
+@Fork(1)
+public class ClearTableBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    DatabaseManager dbManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.prepare(rows);
+        dbManager = BenchmarkDatabase.connect();
+    }
+
+    @Setup(Level.Invocation)
+    public void reseed() throws SQLException {
+        try (Connection conn = BenchmarkDatabase.superConnection(BenchmarkDatabase.DATABASE);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("TRUNCATE games");
+            BenchmarkDatabase.seed(stmt, 1, rows);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dbManager.close();
+        // Следующий запуск найдет полную таблицу и не будет заполнять ее повторно
+        BenchmarkDatabase.prepare(rows);
+    }
+
+    @Benchmark
+    public void clearTable() throws SQLException {
+        dbManager.clearTable();
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.bench;
+
+import org.example.DatabaseManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Операции DatabaseManager на таблице из rows строк: пропускная способность и распределение задержек.
+// Записи добавляются с id выше rows и удаляются после каждой итерации, чтобы размер таблицы не дрейфовал
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    DatabaseManager dbManager;
+    final AtomicInteger nextId = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.prepare(rows);
+        dbManager = BenchmarkDatabase.connect();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetIds() {
+        nextId.set(rows);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeAdded() throws SQLException {
+        BenchmarkDatabase.execute("DELETE FROM games WHERE game_id > " + rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dbManager.close();
+    }
+
+    @Benchmark
+    public void addGame() throws SQLException {
+        int id = nextId.incrementAndGet();
+        dbManager.addGame(id, "Bench " + id, "2020-01-01", 5.0);
+    }
+
+    // Подстрока md5 встречается в одном-двух названиях - проверяет работу триграммного индекса
+    @Benchmark
+    public long searchSelective(Blackhole bh) throws SQLException {
+        String pattern = BenchmarkDatabase.md5(randomId()).substring(0, 8);
+        return dbManager.searchGames(pattern, bh::consume);
+    }
+
+    // "Game 99" совпадает примерно с каждой девяностой строкой - проверяет потоковое чтение большого результата
+    @Benchmark
+    public long searchBroad(Blackhole bh) throws SQLException {
+        return dbManager.searchGames("Game 99", bh::consume);
+    }
+
+    @Benchmark
+    public DatabaseManager.Game getGameById() throws SQLException {
+        return dbManager.getGameById(randomId());
+    }
+
+    // Сводка читается из games_stats и не должна зависеть от rows
+    @Benchmark
+    public DatabaseManager.Statistics getStatistics() throws SQLException {
+        return dbManager.getStatistics();
+    }
+
+    @Benchmark
+    public List<DatabaseManager.Game> getTopRated() throws SQLException {
+        return dbManager.getTopRated(10);
+    }
+
+    // Название сохраняется прежним, меняются только дата и рейтинг, чтобы поиск видел те же данные
+    @Benchmark
+    public void updateGame() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = randomId();
+        dbManager.updateGame(id, "Game " + id + " " + BenchmarkDatabase.md5(id),
+                LocalDate.of(1980, 1, 1).plusDays(random.nextInt(16_000)).toString(),
+                random.nextInt(100) / 10.0);
+    }
+
+    @Benchmark
+    public int deleteGame(DeleteTarget target) throws SQLException {
+        return dbManager.deleteGame(target.title);
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, rows + 1);
+    }
+
+    // Удаляемая строка создается перед каждым вызовом и в замер не входит
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        String title;
+
+        @Setup(Level.Invocation)
+        public void insert(DatabaseManagerBenchmark benchmark) throws SQLException {
+            int id = benchmark.nextId.incrementAndGet();
+            title = "Delete " + id;
+            benchmark.dbManager.addGame(id, title, "2020-01-01", 5.0);
+        }
+    }
+}
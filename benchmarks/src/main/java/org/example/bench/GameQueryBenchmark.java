@@ -0,0 +1,92 @@
+package org.example.bench;
+
+import org.example.DatabaseManager;
+import org.example.GameQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Первая и следующая страница GameQuery для каждого сочетания фильтров и порядка.
+// Перед замером печатается план запроса; на таблицах от PLAN_CHECK_ROWS строк план с полным чтением games
+// считается ошибкой: значит, для этого сочетания не хватает индекса
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class GameQueryBenchmark {
+    private static final int PAGE_SIZE = 100;
+    // На маленькой таблице последовательное чтение действительно дешевле, его планировщик выбирает законно
+    private static final int PLAN_CHECK_ROWS = 1_000_000;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"prefix", "dates", "ratings", "dates+ratings", "prefix+ratings"})
+    public String filter;
+
+    @Param({"ID", "TITLE", "RELEASE_DATE", "RATING"})
+    public String sort;
+
+    DatabaseManager dbManager;
+    GameQuery query;
+    String secondPage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkDatabase.prepare(rows);
+        dbManager = BenchmarkDatabase.connect();
+        query = query(filter).sortedBy(GameQuery.Sort.valueOf(sort), true);
+
+        String plan = dbManager.explainQuery(query, PAGE_SIZE);
+        System.out.println("\n" + filter + " / " + sort + ":\n" + plan);
+        if (rows >= PLAN_CHECK_ROWS && plan.contains("Seq Scan on games")) {
+            throw new IllegalStateException("Query " + query + " reads the whole table:\n" + plan);
+        }
+        secondPage = dbManager.queryGames(query, null, PAGE_SIZE, null).next();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        dbManager.close();
+    }
+
+    @Benchmark
+    public DatabaseManager.GamePage firstPage() throws SQLException {
+        return dbManager.queryGames(query, null, PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public DatabaseManager.GamePage nextPage() throws SQLException {
+        return dbManager.queryGames(query, secondPage, PAGE_SIZE, null);
+    }
+
+    // Данные BenchmarkDatabase.seed: названия "Game <id> <md5>", даты с 1980 года, рейтинг 0.0-9.9
+    private static GameQuery query(String filter) {
+        return switch (filter) {
+            case "prefix" -> new GameQuery(null, "Game 12", null, null, null, null, null, false);
+            case "dates" -> new GameQuery(null, null, LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31),
+                    null, null, null, false);
+            case "ratings" -> new GameQuery(null, null, null, null, 9.0, 9.5, null, false);
+            case "dates+ratings" -> new GameQuery(null, null, LocalDate.of(2000, 1, 1), LocalDate.of(2004, 12, 31),
+                    9.0, null, null, false);
+            case "prefix+ratings" -> new GameQuery(null, "Game 12", null, null, 9.0, null, null, false);
+            default -> throw new IllegalArgumentException("Unknown filter: " + filter);
+        };
+    }
+}
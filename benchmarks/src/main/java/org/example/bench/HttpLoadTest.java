@@ -0,0 +1,136 @@
+package org.example.bench;
+
+import org.example.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Нагрузочный тест серверного режима (Main --server): load.clients клиентов в виртуальных потоках шлют запросы
+// без пауз. Смесь: load.readPercent% - GET /api/games/{id}, остальное - страница поиска по названию.
+// Печатает запросы в секунду и хвост задержек и сохраняет итог в results/http-<время>.json
+//
+//   java -Dload.user=... -Dload.password=... -cp target/benchmarks.jar org.example.bench.HttpLoadTest
+public class HttpLoadTest {
+    private static final String URL = System.getProperty("load.url", "http://localhost:8080");
+    private static final String USER = System.getProperty("load.user", BenchmarkDatabase.BENCH_USER);
+    private static final String PASSWORD = System.getProperty("load.password", BenchmarkDatabase.BENCH_PASSWORD);
+    private static final int CLIENTS = Integer.getInteger("load.clients", 2000);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.durationSeconds", 30);
+    private static final int MAX_ID = Integer.getInteger("load.maxId", 10_000);
+    private static final int READ_PERCENT = Integer.getInteger("load.readPercent", 80);
+
+    private final HttpClient client;
+    private final String authorization = "Basic " + Base64.getEncoder()
+            .encodeToString((USER + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    HttpLoadTest(ExecutorService executor) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpLoadTest test = new HttpLoadTest(executor);
+            for (int i = 0; i < CLIENTS; i++) {
+                executor.execute(test::runClient);
+            }
+            System.out.printf("%d clients against %s, warming up for %d s%n", CLIENTS, URL, WARMUP_SECONDS);
+            TimeUnit.SECONDS.sleep(WARMUP_SECONDS);
+            test.latency.reset();
+            test.measuring = true;
+            long start = System.nanoTime();
+            for (int second = 1; second <= DURATION_SECONDS; second++) {
+                TimeUnit.SECONDS.sleep(1);
+                System.out.printf("%3d s: %,d requests%n", second, test.succeeded.sum() + test.rejected.sum());
+            }
+            test.measuring = false;
+            test.running = false;
+            test.report(System.nanoTime() - start);
+            executor.shutdownNow();
+        }
+    }
+
+    private void runClient() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            HttpRequest request = random.nextInt(100) < READ_PERCENT
+                    ? get("/api/games/" + random.nextInt(1, MAX_ID + 1))
+                    : get("/api/games?limit=20&title=" + random.nextInt(1, 1000));
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (!measuring) continue;
+                latency.record(System.nanoTime() - start);
+                // 404 - случайный id, которого нет в таблице; это тоже обслуженный запрос
+                if (response.statusCode() < 300 || response.statusCode() == 404) {
+                    succeeded.increment();
+                } else {
+                    rejected.increment();
+                }
+            } catch (IOException e) {
+                if (measuring) failed.increment();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(URL + path))
+                .header("Authorization", authorization)
+                .timeout(Duration.ofSeconds(30))
+                .build();
+    }
+
+    private void report(long elapsedNanos) throws IOException {
+        LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        double seconds = elapsedNanos / 1e9;
+        String json = String.format(Locale.ROOT, "{\"clients\":%d,\"durationSeconds\":%.1f,\"requestsPerSecond\":%.1f,"
+                        + "\"succeeded\":%d,\"rejected\":%d,\"failed\":%d,\"latencyMillis\":{\"mean\":%.2f,"
+                        + "\"p50\":%.2f,\"p90\":%.2f,\"p99\":%.2f,\"p99.9\":%.2f,\"max\":%.2f}}",
+                CLIENTS, seconds, snapshot.count() / seconds, succeeded.sum(), rejected.sum(), failed.sum(),
+                snapshot.meanNanos() / 1e6, snapshot.percentileNanos(50) / 1e6, snapshot.percentileNanos(90) / 1e6,
+                snapshot.percentileNanos(99) / 1e6, snapshot.percentileNanos(99.9) / 1e6, snapshot.maxNanos() / 1e6);
+
+        System.out.printf(Locale.ROOT, "%nThroughput: %.1f requests/s (%,d ok, %,d rejected, %,d failed)%n",
+                snapshot.count() / seconds, succeeded.sum(), rejected.sum(), failed.sum());
+        System.out.printf(Locale.ROOT, "Latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                snapshot.percentileNanos(50) / 1e6, snapshot.percentileNanos(90) / 1e6,
+                snapshot.percentileNanos(99) / 1e6, snapshot.percentileNanos(99.9) / 1e6, snapshot.maxNanos() / 1e6);
+
+        Path file = Path.of("results", "http-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        Files.createDirectories(file.getParent());
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write(json);
+        }
+        System.out.println("Results written to " + file);
+    }
+}
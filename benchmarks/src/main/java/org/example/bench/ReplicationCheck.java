@@ -0,0 +1,75 @@
+package org.example.bench;
+
+import org.example.DatabaseEndpoints;
+import org.example.DatabaseManager;
+import org.example.ReplicaSet;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Проверка разделения чтения и записи на двух локальных PostgreSQL с потоковой репликацией (см. README):
+// основной сервер задается -Dbench.url, реплики - -Dgames.db.replicas. check.writes раз изменяет строку и сразу
+// читает ее: в сеансе без чтения своих записей часть чтений с реплики возвращает старое название,
+// в сеансе с ним (-Dgames.db.readYourWritesMillis) устаревших чтений быть не должно
+//
+//   java -Dgames.db.replicas=localhost:5433 -cp target/benchmarks.jar org.example.bench.ReplicationCheck
+public class ReplicationCheck {
+    private static final int ROWS = Integer.getInteger("check.rows", 10_000);
+    private static final int WRITES = Integer.getInteger("check.writes", 1_000);
+    private static final long HEALTHY_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        List<String> replicas = DatabaseEndpoints.fromSystemProperties().replicaUrls(BenchmarkDatabase.DATABASE);
+        if (replicas.isEmpty()) {
+            System.err.println("Set -Dgames.db.replicas=host:port[,host:port...]");
+            System.exit(1);
+        }
+        BenchmarkDatabase.prepare(ROWS);
+        String primary = BenchmarkDatabase.SERVER_URL + BenchmarkDatabase.DATABASE;
+
+        DatabaseManager pinned = connect(primary, replicas);
+        System.setProperty("games.db.readYourWritesMillis", "0");
+        DatabaseManager unpinned = connect(primary, replicas);
+        try {
+            awaitReplicas(pinned);
+            awaitReplicas(unpinned);
+            System.out.printf("Stale reads without read-your-writes: %d of %d%n", staleReads(unpinned), WRITES);
+            int stale = staleReads(pinned);
+            System.out.printf("Stale reads with read-your-writes:    %d of %d%n", stale, WRITES);
+            pinned.getReplicaStats().forEach(System.out::println);
+            if (stale > 0) System.exit(2);
+        } finally {
+            pinned.close();
+            unpinned.close();
+        }
+    }
+
+    private static DatabaseManager connect(String primary, List<String> replicas) throws SQLException {
+        DatabaseManager dbManager = new DatabaseManager(primary, replicas);
+        dbManager.connect(BenchmarkDatabase.BENCH_USER, BenchmarkDatabase.BENCH_PASSWORD);
+        return dbManager;
+    }
+
+    private static void awaitReplicas(DatabaseManager dbManager) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(HEALTHY_TIMEOUT_SECONDS);
+        while (!dbManager.getReplicaStats().stream().allMatch(ReplicaSet.Stats::healthy)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Replicas are not healthy: " + dbManager.getReplicaStats());
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+    }
+
+    private static int staleReads(DatabaseManager dbManager) throws SQLException {
+        int stale = 0;
+        for (int i = 0; i < WRITES; i++) {
+            int id = i % ROWS + 1;
+            String title = "Replication check " + System.nanoTime();
+            dbManager.updateGames(List.of(new DatabaseManager.Game(id, title, "2000-01-01", 5.0)));
+            DatabaseManager.Game read = dbManager.getGameById(id);
+            if (read == null || !read.title().equals(title)) stale++;
+        }
+        return stale;
+    }
+}
@@ -0,0 +1,341 @@
+package org.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final Properties props;
+    private final Config config;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    private final ScheduledExecutorService housekeeper;
+    private volatile ConnectionTask warmUpTask;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, Properties props, Config config) {
+        this.url = url;
+        this.props = new Properties();
+        this.props.putAll(props);
+        this.props.setProperty("connectTimeout", String.valueOf(config.connectTimeoutSeconds()));
+        this.props.setProperty("loginTimeout", String.valueOf(config.connectTimeoutSeconds()));
+        // После prepareThreshold выполнений драйвер переходит на именованное серверное выражение.
+        // autosave=conservative позволяет драйверу прозрачно переподготовить выражение и внутри транзакции,
+        // если после CREATE OR REPLACE изменился тип результата
+        this.props.setProperty("prepareThreshold", String.valueOf(config.prepareThreshold()));
+        this.props.setProperty("autosave", "conservative");
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(config.idleTimeoutMillis(), config.maxLifetimeMillis()) / 4);
+        housekeeper.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(config.maxWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + config.maxWaitMillis()
+                        + " ms waiting for a connection (active: " + active.get() + ", max: " + config.maxSize() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) break;
+                destroy(pooled);
+            }
+            if (pooled == null) pooled = open();
+            active.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Выполняется на каждом соединении, открытом warmUp(), до того как оно попадет к пользователям
+    public void setWarmUpTask(ConnectionTask task) {
+        this.warmUpTask = task;
+    }
+
+    // Заранее и параллельно открывает недостающие до minIdle соединения и прогревает их warmUpTask,
+    // чтобы первые запросы не ждали ни рукопожатия, ни разбора запросов на сервере
+    public void warmUp() throws SQLException {
+        int missing = config.minIdle() - total.get();
+        List<Thread> threads = new ArrayList<>();
+        List<SQLException> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < missing && !closed && permits.tryAcquire(); i++) {
+            threads.add(Thread.ofVirtual().name("connection-pool-warmup").start(() -> {
+                PooledConnection pooled;
+                try {
+                    pooled = open();
+                } catch (SQLException e) {
+                    permits.release();
+                    failures.add(e);
+                    return;
+                }
+                active.incrementAndGet();
+                ConnectionTask task = warmUpTask;
+                // Закрытие выданного соединения возвращает его в пул и освобождает разрешение
+                try (Connection conn = pooled.lease()) {
+                    if (task != null) task.run(conn);
+                } catch (SQLException e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!failures.isEmpty()) throw failures.getFirst();
+    }
+
+    // Соединение с теми же настройками, но вне пула: для долгих сессий вроде LISTEN
+    public Connection openUnpooled() throws SQLException {
+        return DriverManager.getConnection(url, props);
+    }
+
+    public Stats getStats() {
+        return new Stats(active.get(), idle.size(), total.get(), waiting.get(), config.maxSize());
+    }
+
+    public StatementCache.Stats getStatementStats() {
+        return statementCounters.snapshot();
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, props);
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.nanoTime();
+        if (now - pooled.created > TimeUnit.MILLISECONDS.toNanos(config.maxLifetimeMillis())) return false;
+        if (now - pooled.lastUsed < TimeUnit.MILLISECONDS.toNanos(config.validationIntervalMillis())) return true;
+        try {
+            return pooled.physical.isValid(config.validationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        boolean reusable = !closed && !pooled.broken
+                && System.nanoTime() - pooled.created < TimeUnit.MILLISECONDS.toNanos(config.maxLifetimeMillis());
+        if (reusable) {
+            try {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                pooled.physical.clearWarnings();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+        if (reusable) {
+            pooled.lastUsed = System.nanoTime();
+            idle.offerFirst(pooled);
+        } else {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.idleTimeoutMillis());
+        long maxLifetime = TimeUnit.MILLISECONDS.toNanos(config.maxLifetimeMillis());
+        for (PooledConnection pooled : idle.toArray(new PooledConnection[0])) {
+            boolean expired = now - pooled.created > maxLifetime;
+            boolean idleTooLong = now - pooled.lastUsed > idleTimeout && total.get() > config.minIdle();
+            if ((expired || idleTooLong) && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        if (!closed) {
+            try {
+                warmUp();
+            } catch (SQLException ignored) {
+                // Повторим на следующем проходе
+            }
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        final long created = System.nanoTime();
+        volatile long lastUsed = created;
+        volatile boolean broken;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, config.statementCacheSize(), statementCounters);
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    // Выданное соединение: close() возвращает физическое соединение в пул, повторный close() ничего не делает
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || pooled.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + pooled.physical;
+                }
+                default -> {
+                    if (returned) throw new SQLException("Connection has already been returned to the pool");
+                }
+            }
+            try {
+                boolean prepare = method.getName().equals("prepareStatement");
+                if ((prepare || method.getName().equals("prepareCall")) && args.length == 1) {
+                    return pooled.statements.prepare((String) args[0], !prepare, (Connection) proxy);
+                }
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException sql && isConnectionError(sql)) {
+                    pooled.broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("08") || state.equals("57P01"));
+    }
+
+    @FunctionalInterface
+    public interface ConnectionTask {
+        void run(Connection conn) throws SQLException;
+    }
+
+    public record Config(int maxSize, int minIdle, long maxWaitMillis, long idleTimeoutMillis,
+                         long maxLifetimeMillis, long validationIntervalMillis,
+                         int connectTimeoutSeconds, int validationTimeoutSeconds,
+                         int statementCacheSize, int prepareThreshold) {
+
+        public Config {
+            if (maxSize < 1) throw new IllegalArgumentException("maxSize must be positive");
+            if (minIdle < 0 || minIdle > maxSize) throw new IllegalArgumentException("minIdle must be in [0, maxSize]");
+        }
+
+        // Настройки задаются через -Dgames.pool.*, например -Dgames.pool.maxSize=20
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Integer.getInteger("games.pool.maxSize", 10),
+                    Integer.getInteger("games.pool.minIdle", 2),
+                    Long.getLong("games.pool.maxWaitMillis", 5_000),
+                    Long.getLong("games.pool.idleTimeoutMillis", 600_000),
+                    Long.getLong("games.pool.maxLifetimeMillis", 1_800_000),
+                    Long.getLong("games.pool.validationIntervalMillis", 5_000),
+                    Integer.getInteger("games.pool.connectTimeoutSeconds", 10),
+                    Integer.getInteger("games.pool.validationTimeoutSeconds", 2),
+                    Integer.getInteger("games.pool.statementCacheSize", 64),
+                    Integer.getInteger("games.pool.prepareThreshold", 3));
+        }
+
+        public static Config singleConnection() {
+            return new Config(1, 0, 30_000, 60_000, 1_800_000, 5_000, 10, 2, 0, 5);
+        }
+    }
+
+    public record Stats(int active, int idle, int total, int waiting, int maxSize) {
+        @Override
+        public String toString() {
+            return String.format("Pool: %d active, %d idle, %d/%d open, %d waiting", active, idle, total, maxSize, waiting);
+        }
+    }
+}
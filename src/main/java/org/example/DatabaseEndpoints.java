@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Адреса серверов PostgreSQL: основной принимает запись и DDL, реплики (потоковая репликация) - только чтение.
+// Задаются как host:port через -Dgames.db.primary (по умолчанию localhost:5432)
+// и -Dgames.db.replicas через запятую (по умолчанию реплик нет, все идет на основной сервер)
+public record DatabaseEndpoints(String primary, List<String> replicas) {
+
+    public DatabaseEndpoints {
+        if (primary == null || primary.isBlank()) throw new IllegalArgumentException("Primary endpoint is required");
+        replicas = List.copyOf(replicas);
+    }
+
+    public static DatabaseEndpoints fromSystemProperties() {
+        List<String> replicas = new ArrayList<>();
+        for (String replica : System.getProperty("games.db.replicas", "").split(",")) {
+            if (!replica.isBlank()) replicas.add(replica.trim());
+        }
+        return new DatabaseEndpoints(System.getProperty("games.db.primary", "localhost:5432").trim(), replicas);
+    }
+
+    public String primaryUrl(String database) {
+        return url(primary, database);
+    }
+
+    public List<String> replicaUrls(String database) {
+        return replicas.stream().map(replica -> url(replica, database)).toList();
+    }
+
+    private static String url(String endpoint, String database) {
+        return "jdbc:postgresql://" + endpoint + "/" + database;
+    }
+}
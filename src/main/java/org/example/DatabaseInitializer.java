@@ -3,16 +3,12 @@ package org.example;
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 
 public class DatabaseInitializer {
-    private static final String DB_URL = "jdbc:postgresql://localhost:5432/";
-    private static final String DEFAULT_DB = "postgres";
     private static final String GAMES_DB = "games_db";
 
-    public static void initializeDatabase(String superUsername, String superPassword) {
-        try (Connection adminConn = DriverManager.getConnection(DB_URL + DEFAULT_DB, superUsername, superPassword);
+    public static void initializeDatabase() {
+        try (Connection adminConn = Main.maintenancePool().borrow();
              Statement stmt = adminConn.createStatement()) {
             stmt.execute("CREATE DATABASE " + GAMES_DB);
         } catch (SQLException e) {
@@ -22,8 +18,8 @@ public class DatabaseInitializer {
     }
 
     public static void createFirstAdmin(DatabaseManager dbManager) {
-        try (Connection conn = DriverManager.getConnection(DB_URL + GAMES_DB, Main.SUPER_USERNAME, Main.SUPER_PASSWORD)) {
-            loadAndExecuteSQLScript(conn);
+        try (Connection conn = openAsSuperuser()) {
+            SchemaMigrator.migrate(conn);
 
             JTextField usernameField = new JTextField(15);
             JPasswordField passwordField = new JPasswordField(15);
@@ -61,15 +57,9 @@ public class DatabaseInitializer {
         }
     }
 
-    private static void loadAndExecuteSQLScript(Connection conn) throws SQLException {
-        try (InputStream is = DatabaseInitializer.class.getClassLoader().getResourceAsStream("init.sql")) {
-            if (is == null) throw new SQLException("SQL script not found: " + "init.sql");
-            String sql = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(sql);
-            }
-        } catch (Exception e) {
-            throw new SQLException("Failed to execute SQL script: " + e.getMessage(), e);
-        }
+    // Соединение суперпользователя с games_db на основном сервере: для миграций схемы
+    static Connection openAsSuperuser() throws SQLException {
+        return DriverManager.getConnection(DatabaseEndpoints.fromSystemProperties().primaryUrl(GAMES_DB),
+                Main.SUPER_USERNAME, Main.SUPER_PASSWORD);
     }
-}
\ No newline at end of file
+}
@@ -1,124 +1,1030 @@
 package org.example;
 
+import org.example.DatabaseMetrics.Operation;
+
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class DatabaseManager {
-    private Connection conn;
-    private String currentRole = "guest";
+    private static final String DATABASE = "games_db";
+    private static final int FETCH_SIZE = 500;
+    private static final String ROLES_SQL =
+            "SELECT rolname FROM pg_roles WHERE pg_has_role(current_user, oid, 'member')";
+    private static final String GAME_BY_ID_SQL = "SELECT * FROM games WHERE game_id = ?";
+    private static final String CHANGE_VERSION_SQL = "SELECT pg_current_snapshot()::text";
+    private static final String CHANGE_RESET_SQL =
+            "SELECT pg_current_snapshot()::text, games_reset_since(?::pg_snapshot)";
+    private static final String CHANGES_SQL = "SELECT * FROM games_changes_since(?::pg_snapshot) LIMIT ?";
+    // Сумма по секциям: у секционированной games (миграция V5) своей оценки нет. Никогда не анализированная
+    // таблица дает 0, и тогда строки считаются точно
+    private static final String ESTIMATE_SQL =
+            "SELECT coalesce(sum(c.reltuples) FILTER (WHERE c.reltuples > 0), 0)::bigint "
+            + "FROM pg_partition_tree('games') t JOIN pg_class c ON c.oid = t.relid WHERE t.isleaf";
+
+    private final String url;
+    private final List<String> replicaUrls;
+    private volatile ConnectionPool pool;
+    private volatile ReplicaSet replicas;
+    private final long readYourWritesNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("games.db.readYourWritesMillis", 3_000));
+    private final Session defaultSession = new Session();
+    private final ThreadLocal<Session> boundSession = new ThreadLocal<>();
+    private volatile String currentRole = "guest";
+    private final GameCache cache = GameCache.fromSystemProperties();
+    private volatile GamesChangeListener changeListener;
+    private final DatabaseMetrics metrics = DatabaseMetrics.fromSystemProperties();
+    private volatile DatabaseMonitor monitor;
+    private final List<Runnable> changeSubscribers = new CopyOnWriteArrayList<>();
+
+    public DatabaseManager() {
+        this(DatabaseEndpoints.fromSystemProperties());
+    }
+
+    public DatabaseManager(DatabaseEndpoints endpoints) {
+        this(endpoints.primaryUrl(DATABASE), endpoints.replicaUrls(DATABASE));
+    }
+
+    public DatabaseManager(String url) {
+        this(url, List.of());
+    }
+
+    // Запись, DDL и отслеживание изменений идут на url, чтение - на реплики из replicaUrls, если они есть
+    public DatabaseManager(String url, List<String> replicaUrls) {
+        this.url = url;
+        this.replicaUrls = List.copyOf(replicaUrls);
+    }
 
     public void connect(String username, String password) throws SQLException {
         Properties props = new Properties();
         props.setProperty("user", username);
         props.setProperty("password", password);
-        conn = DriverManager.getConnection("jdbc:postgresql://localhost:5432/games_db", props);
+        ConnectionPool.Config poolConfig = ConnectionPool.Config.fromSystemProperties();
+        ConnectionPool newPool = new ConnectionPool(url, props, poolConfig);
+
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.CONNECT);
+             Connection conn = newPool.borrow()) {
+            timer.query(ROLES_SQL, username);
+            String role = resolveRole(conn);
+            if (role == null) throw noRole(username);
+            currentRole = role;
+            timer.complete(0, 0);
+        } catch (SQLException e) {
+            newPool.close();
+            throw e;
+        }
+        int warmUpRuns = Math.max(1, newPool.getConfig().prepareThreshold());
+        newPool.setWarmUpTask(conn -> warmStatements(conn, warmUpRuns));
+        pool = newPool;
+        ReplicaSet newReplicas = replicaUrls.isEmpty() ? null
+                : new ReplicaSet(newPool, replicaUrls, props, poolConfig, ReplicaSet.Config.fromSystemProperties());
+        if (newReplicas != null) newReplicas.setWarmUpTask(conn -> warmStatements(conn, warmUpRuns));
+        replicas = newReplicas;
+        changeListener = new GamesChangeListener(newPool, this::onGamesChanged);
+        changeListener.start();
+        DatabaseMonitor newMonitor = new DatabaseMonitor(this, metrics, username, url);
+        newMonitor.register();
+        monitor = newMonitor;
+        Thread.ofVirtual().name("connection-pool-warmup").start(() -> {
+            try {
+                newPool.warmUp();
+            } catch (SQLException ignored) {
+                // Соединения откроются по требованию
+            }
+            if (newReplicas != null) newReplicas.warmUp();
+        });
+    }
 
+    // Выполняет частые запросы runs раз с параметрами, не дающими строк: драйвер успевает перейти на именованные
+    // серверные выражения, а серверный процесс соединения - загрузить каталог и спланировать запросы
+    private static void warmStatements(Connection conn, int runs) throws SQLException {
+        for (int i = 0; i < runs; i++) {
+            try (PreparedStatement stmt = conn.prepareStatement(GAME_BY_ID_SQL)) {
+                stmt.setInt(1, -1);
+                stmt.executeQuery().close();
+            }
+            GameQuery query = GameQuery.all();
+            readPage(conn, query, query.continuation(Integer.MAX_VALUE, ""), 0, 1, null, null);
+            try (PreparedStatement stmt = conn.prepareStatement(ESTIMATE_SQL)) {
+                stmt.executeQuery().close();
+            }
+        }
+    }
+
+    // Проверяет учетные данные отдельным кратким соединением и возвращает роль пользователя (admin/guest)
+    // или null, если он не входит ни в admin_role, ни в guest_role: войти в games_db по умолчанию может
+    // любая учетная запись кластера, но это еще не дает доступа к играм
+    public String authenticate(String username, String password) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("user", username);
+        props.setProperty("password", password);
+        props.setProperty("connectTimeout", "10");
+        try (Connection conn = DriverManager.getConnection(url, props)) {
+            return resolveRole(conn);
+        }
+    }
+
+    private static String resolveRole(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT rolname FROM pg_roles WHERE pg_has_role(current_user, oid, 'member')")) {
+             ResultSet rs = stmt.executeQuery(ROLES_SQL)) {
+            boolean guest = false;
             while (rs.next()) {
                 String role = rs.getString("rolname");
-                if ("admin_role".equals(role)) {
-                    currentRole = "admin";
-                    break;
-                } else if ("guest_role".equals(role)) {
-                    currentRole = "guest";
-                }
+                if ("admin_role".equals(role)) return "admin";
+                if ("guest_role".equals(role)) guest = true;
             }
+            return guest ? "guest" : null;
         }
     }
 
+    private static SQLException noRole(String username) {
+        return new SQLException("User " + username + " is not a member of admin_role or guest_role", "42501");
+    }
+
     public void close() throws SQLException {
-        if (conn != null && !conn.isClosed()) {
-            conn.close();
+        GamesChangeListener listener = changeListener;
+        if (listener != null) {
+            changeListener = null;
+            listener.close();
+        }
+        DatabaseMonitor currentMonitor = monitor;
+        if (currentMonitor != null) {
+            monitor = null;
+            currentMonitor.unregister();
+        }
+        cache.invalidateAll();
+        ReplicaSet currentReplicas = replicas;
+        if (currentReplicas != null) {
+            replicas = null;
+            currentReplicas.close();
+        }
+        ConnectionPool current = pool;
+        if (current != null) {
+            pool = null;
+            current.close();
         }
     }
 
+    public ConnectionPool.Stats getPoolStats() {
+        ConnectionPool current = pool;
+        return current != null ? current.getStats() : null;
+    }
+
+    // Пустой список, если реплик нет
+    public List<ReplicaSet.Stats> getReplicaStats() {
+        ReplicaSet current = replicas;
+        return current != null ? current.getStats() : List.of();
+    }
+
+    public StatementCache.Stats getStatementStats() {
+        ConnectionPool current = pool;
+        return current != null ? current.getStatementStats() : null;
+    }
+
+    public GameCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Снимок всех метрик в одном тексте: задержки по операциям, пул, кэш и медленные запросы
+    public String dumpMetrics() {
+        StringBuilder sb = new StringBuilder(metrics.dump());
+        sb.append(System.lineSeparator()).append(getPoolStats())
+                .append(System.lineSeparator()).append(getStatementStats())
+                .append(System.lineSeparator()).append(getCacheStats())
+                .append(System.lineSeparator());
+        for (ReplicaSet.Stats replica : getReplicaStats()) {
+            sb.append(replica).append(System.lineSeparator());
+        }
+        List<String> slowQueries = metrics.getRecentSlowQueries();
+        sb.append(System.lineSeparator()).append("Slow queries (>= ")
+                .append(metrics.getSlowQueryThresholdMillis()).append(" ms): ").append(slowQueries.size())
+                .append(System.lineSeparator());
+        for (String query : slowQueries) {
+            sb.append(query).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private void onGamesChanged(GamesChangeListener.Change change) {
+        if (change.all()) {
+            cache.invalidateAll();
+        } else {
+            for (int id : change.ids()) {
+                cache.invalidate(id);
+            }
+        }
+        for (Runnable subscriber : changeSubscribers) {
+            subscriber.run();
+        }
+    }
+
+    // Подписка на изменения games из любых сеансов (в том числе своих). Вызывается в потоке слушателя:
+    // что именно изменилось, подписчик узнает через getChangesSince
+    public void addChangeSubscriber(Runnable subscriber) {
+        changeSubscribers.add(subscriber);
+    }
+
     public String getCurrentRole() {
         return currentRole;
     }
 
-    public void addGame(int id, String title, String releaseDate, double rating) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("CALL add_game(?,?,?,?)")) {
+    public void addGame(int id, String title, String releaseDate, Double rating) throws SQLException {
+        String sql = "CALL add_game(?,?,?,?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.ADD_GAME);
+             Connection conn = borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            timer.query(sql, id, title, releaseDate, rating);
             stmt.setInt(1, id);
             stmt.setString(2, title);
-            stmt.setDate(3, Date.valueOf(releaseDate));
-            stmt.setDouble(4, rating);
+            stmt.setObject(3, releaseDate == null ? null : Date.valueOf(releaseDate), Types.DATE);
+            stmt.setObject(4, rating, Types.DOUBLE);
             stmt.execute();
+            timer.complete(0, 1);
+        } finally {
+            cache.invalidate(id);
+            wrote();
         }
     }
 
-    public String searchGames(String title) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM search_by_title(?)")) {
-            stmt.setString(1, title);
-            ResultSet rs = stmt.executeQuery();
-            StringBuilder result = new StringBuilder();
+    public GameImporter.Result importCsv(InputStream in, boolean header, GameImporter.DuplicatePolicy policy,
+                                         Consumer<GameImporter.Progress> progress) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.IMPORT);
+             Connection conn = borrow()) {
+            timer.query("COPY games_import FROM STDIN", header, policy);
+            GameImporter.Result result = GameImporter.importCsv(conn, in, header, policy, progress);
+            timer.complete(0, result.rowsInserted() + result.rowsUpdated());
+            return result;
+        } finally {
+            cache.invalidateAll();
+            wrote();
+        }
+    }
+
+    public long exportGames(OutputStream out, GameExporter.Filter filter, GameExporter.Format format, boolean gzip,
+                            Consumer<GameExporter.Progress> progress) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.EXPORT);
+             Connection conn = borrowForRead()) {
+            timer.query("COPY games TO STDOUT", filter, format, gzip);
+            long rows = GameExporter.export(conn, filter, format, gzip, out, progress);
+            timer.complete(rows, 0);
+            return rows;
+        }
+    }
+
+    public long searchGames(String title, Consumer<Game> action) throws SQLException {
+        return searchGames(title, null, action);
+    }
+
+    public long searchGames(String title, QueryHandle handle, Consumer<Game> action) throws SQLException {
+        return streamGames(Operation.SEARCH, "SELECT * FROM search_by_title(?)", handle, true, false, action, title);
+    }
+
+    // Нечеткий поиск: не более maxResults лучших совпадений в порядке убывания схожести
+    public long searchGamesSimilar(String title, int maxResults, Consumer<Game> action) throws SQLException {
+        return searchGamesSimilar(title, maxResults, null, action);
+    }
+
+    public long searchGamesSimilar(String title, int maxResults, QueryHandle handle, Consumer<Game> action)
+            throws SQLException {
+        return searchGamesSimilar(title, maxResults, handle, false, action);
+    }
+
+    // primary = true - чтение с основного сервера, для таблицы GUI: см. queryGames со skip
+    long searchGamesSimilar(String title, int maxResults, QueryHandle handle, boolean primary, Consumer<Game> action)
+            throws SQLException {
+        return streamGames(Operation.SEARCH_SIMILAR, "SELECT * FROM search_by_title_similar(?, ?)", handle, true,
+                primary, action, title, maxResults);
+    }
+
+    // Страница результата query после строки, на которой закончилась предыдущая страница (continuation == null -
+    // с начала). GamePage.next - ключ для следующей страницы или null, если строк больше нет
+    public GamePage queryGames(GameQuery query, String continuation, int limit, QueryHandle handle)
+            throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.QUERY);
+             Connection conn = borrowForRead()) {
+            return queryGames(conn, query, continuation, 0, limit, handle, timer);
+        }
+    }
+
+    // Для таблицы GUI: skip нужен при переходе к странице, для которой еще нет ключа продолжения.
+    // Страницы читаются с основного сервера, как и версия из getChangeVersion: на отстающей реплике в странице
+    // не оказалось бы строк, записанных до версии, и getChangesSince их бы уже не вернул
+    GamePage queryGames(GameQuery query, String continuation, int skip, int limit, QueryHandle handle)
+            throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.QUERY);
+             Connection conn = borrow()) {
+            return queryGames(conn, query, continuation, skip, limit, handle, timer);
+        }
+    }
+
+    private static GamePage queryGames(Connection conn, GameQuery query, String continuation, int skip, int limit,
+                                       QueryHandle handle, DatabaseMetrics.Timer timer) throws SQLException {
+        GamePage page = readPage(conn, query, continuation, skip, limit, handle, timer);
+        timer.complete(page.games().size(), 0);
+        return page;
+    }
+
+    static GamePage readPage(Connection conn, GameQuery query, String continuation, int skip, int limit,
+                             QueryHandle handle, DatabaseMetrics.Timer timer) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = query.pageSql(continuation, skip, limit, params);
+        if (timer != null) timer.query(sql, params.toArray());
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            if (handle != null) handle.attach(stmt);
+            List<Game> games = new ArrayList<>(Math.min(limit, FETCH_SIZE));
+            String lastKey = null;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (handle != null && handle.isCancelled()) throw QueryHandle.cancelledException();
+                    if (games.size() == limit) {
+                        return new GamePage(games, query.continuation(games.getLast().id(), lastKey));
+                    }
+                    games.add(readGame(rs));
+                    lastKey = rs.getString("sort_key");
+                }
+            } finally {
+                if (handle != null) handle.detach();
+            }
+            return new GamePage(games, null);
+        }
+    }
+
+    // Для таблицы GUI: ключи продолжения через каждые step строк на протяжении rows строк после continuation.
+    // Переход далеко от известного ключа читает их одним узким запросом, а страницу - с последнего из них,
+    // и следующие переходы в эту область уже не пропускают тысячи строк через OFFSET
+    List<String> queryAnchors(GameQuery query, String continuation, int rows, int step, QueryHandle handle)
+            throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.QUERY);
+             Connection conn = borrow()) {
+            List<String> anchors = readAnchors(conn, query, continuation, rows, step, handle, timer);
+            timer.complete(anchors.size(), 0);
+            return anchors;
+        }
+    }
+
+    static List<String> readAnchors(Connection conn, GameQuery query, String continuation, int rows, int step,
+                                    QueryHandle handle, DatabaseMetrics.Timer timer) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = query.anchorSql(continuation, rows, step, params);
+        if (timer != null) timer.query(sql, params.toArray());
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            if (handle != null) handle.attach(stmt);
+            List<String> anchors = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (handle != null && handle.isCancelled()) throw QueryHandle.cancelledException();
+                    anchors.add(query.continuation(rs.getInt("game_id"), rs.getString("sort_key")));
+                }
+            } finally {
+                if (handle != null) handle.detach();
+            }
+            return anchors;
+        }
+    }
+
+    // План первой страницы запроса (EXPLAIN без выполнения): по нему видно, какие индексы использует фильтр
+    public String explainQuery(GameQuery query, int limit) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "EXPLAIN " + query.pageSql(null, 0, limit, params);
+        try (Connection conn = borrowForRead();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            return plan.toString();
+        }
+    }
+
+    // Число строк не больше limit. Без фильтров для больших таблиц берется оценка планировщика из pg_class
+    public long countGames(GameQuery query, long limit, QueryHandle handle) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.COUNT);
+             Connection conn = borrowForRead()) {
+            long count;
+            if (!query.isFiltered()) {
+                count = queryLong(conn, handle, timer, ESTIMATE_SQL);
+                if (count < limit) count = queryLong(conn, handle, timer, "SELECT count(*) FROM games");
+            } else {
+                List<Object> params = new ArrayList<>();
+                String sql = query.countSql(limit, params);
+                count = queryLong(conn, handle, timer, sql, params.toArray());
+            }
+            timer.complete(1, 0);
+            return count;
+        }
+    }
+
+    // Сводка по рейтингам и годам из games_stats: таблицу поддерживают триггеры, поэтому ответ не зависит
+    // от размера games. min/max берутся из индекса games_rating_key_idx
+    public Statistics getStatistics() throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.STATISTICS);
+             Connection conn = borrowForRead();
+             Statement stmt = conn.createStatement()) {
+            long games = 0, rated = 0;
+            Double average = null, min = null, max = null;
+            timer.query("SELECT * FROM games_summary()");
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM games_summary()")) {
+                if (rs.next()) {
+                    games = rs.getLong("games");
+                    rated = rs.getLong("rated");
+                    average = rs.getObject("average_rating", Double.class);
+                    min = rs.getObject("min_rating", Double.class);
+                    max = rs.getObject("max_rating", Double.class);
+                }
+            }
+            timer.query("SELECT * FROM games_rating_distribution()");
+            Map<Integer, Long> ratings = readCounts(stmt, "SELECT * FROM games_rating_distribution()");
+            timer.query("SELECT * FROM games_per_year()");
+            Map<Integer, Long> years = readCounts(stmt, "SELECT * FROM games_per_year()");
+            timer.complete(1 + ratings.size() + years.size(), 0);
+            return new Statistics(games, rated, average, min, max, ratings, years);
+        }
+    }
+
+    private static Map<Integer, Long> readCounts(Statement stmt, String sql) throws SQLException {
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                result.append(String.format("ID: %d, Title: %s, Date: %s, Rating: %.1f\n",
-                        rs.getInt("game_id"), rs.getString("title"), rs.getDate("release_date"), rs.getDouble("rating")));
+                counts.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    // Лучшие по рейтингу, читаются по индексу без сортировки всей таблицы
+    public List<Game> getTopRated(int limit) throws SQLException {
+        List<Game> top = new ArrayList<>(limit);
+        streamGames(Operation.TOP_RATED, "SELECT * FROM top_rated_games(?)", null, false, false, top::add, limit);
+        return top;
+    }
+
+    // Версия данных для getChangesSince: снимок транзакций на момент вызова. Версию нужно взять до чтения
+    // строк, к которым потом применяются изменения. Версия и изменения всегда читаются с основного сервера:
+    // уведомления об изменениях приходят от него, и реплика может их еще не получить
+    public String getChangeVersion() throws SQLException {
+        try (Connection conn = borrow()) {
+            return readChangeVersion(conn);
+        }
+    }
+
+    static String readChangeVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(CHANGE_VERSION_SQL)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    // Строки, добавленные, измененные и удаленные после version. Если изменений больше maxChanges или таблицу
+    // очищали, возвращается reset = true: дешевле перечитать все заново
+    public Changes getChangesSince(String version, int maxChanges) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.CHANGES);
+             Connection conn = borrow()) {
+            return readChanges(conn, version, maxChanges, timer);
+        }
+    }
+
+    // Новая версия и изменения читаются в одном снимке, чтобы между ними ничего не потерялось; timer может быть
+    // null. Версия должна быть взята на том же сервере, что и conn, или на основном, если conn - его реплика
+    static Changes readChanges(Connection conn, String version, int maxChanges, DatabaseMetrics.Timer timer)
+            throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+        }
+        String current;
+        if (timer != null) timer.query(CHANGE_RESET_SQL, version);
+        try (PreparedStatement stmt = conn.prepareStatement(CHANGE_RESET_SQL)) {
+            stmt.setString(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                current = rs.getString(1);
+                if (rs.getBoolean(2)) {
+                    conn.commit();
+                    if (timer != null) timer.complete(0, 0);
+                    return new Changes(current, true, List.of(), Set.of(), Set.of());
+                }
+            }
+        }
+        List<Game> upserted = new ArrayList<>();
+        Set<Integer> deleted = new HashSet<>();
+        Set<Integer> inserted = new HashSet<>();
+        if (timer != null) timer.query(CHANGES_SQL, version, maxChanges + 1);
+        try (PreparedStatement stmt = conn.prepareStatement(CHANGES_SQL)) {
+            stmt.setString(1, version);
+            stmt.setInt(2, maxChanges + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (rs.getBoolean("deleted")) {
+                        deleted.add(rs.getInt("game_id"));
+                    } else {
+                        Game game = readGame(rs);
+                        upserted.add(game);
+                        if (rs.getBoolean("inserted")) inserted.add(game.id());
+                    }
+                }
+            }
+        }
+        conn.commit();
+        if (timer != null) timer.complete(upserted.size() + deleted.size(), 0);
+        if (upserted.size() + deleted.size() > maxChanges) {
+            return new Changes(current, true, List.of(), Set.of(), Set.of());
+        }
+        return new Changes(current, false, upserted, deleted, inserted);
+    }
+
+    // Строка и версия данных, в снимке которой она прочитана, для правки с проверкой версии (EditQueue).
+    // Обе читаются с основного сервера одной транзакцией мимо кэша: строка из кэша или с отстающей реплики
+    // могла быть старше версии, и тогда чужая запись между ними не считалась бы конфликтом
+    public SeenGame getGameForEdit(int id) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.GET_GAME);
+             Connection conn = borrow()) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+            }
+            String version = readChangeVersion(conn);
+            timer.query(GAME_BY_ID_SQL, id);
+            Game game = null;
+            try (PreparedStatement stmt = conn.prepareStatement(GAME_BY_ID_SQL)) {
+                stmt.setInt(1, id);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) game = readGame(rs);
+                }
+            }
+            conn.commit();
+            timer.complete(game != null ? 1 : 0, 0);
+            return new SeenGame(game, version);
+        }
+    }
+
+    // Все строки по возрастанию game_id и версия данных, от которой к ним применяются изменения, в одном
+    // снимке. Строки читаются курсором и сразу передаются в action. Для локального снимка GameSnapshot
+    static String readAllGames(Connection conn, Consumer<Game> action) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY");
+        }
+        String version = readChangeVersion(conn);
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM games ORDER BY game_id")) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(readGame(rs));
+                }
+            }
+        }
+        conn.commit();
+        return version;
+    }
+
+    // Одно соединение только для чтения без пула: первая доступная реплика, иначе основной сервер.
+    // Для клиентов, которым нужен редкий короткий запрос (киоск), а не постоянные соединения
+    static Connection openForRead(DatabaseEndpoints endpoints, String username, String password)
+            throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("user", username);
+        props.setProperty("password", password);
+        props.setProperty("connectTimeout", "10");
+        props.setProperty("readOnly", "true");
+        for (String replica : endpoints.replicaUrls(DATABASE)) {
+            try {
+                return DriverManager.getConnection(replica, props);
+            } catch (SQLException e) {
+                // Следующая реплика или основной сервер
+            }
+        }
+        return DriverManager.getConnection(endpoints.primaryUrl(DATABASE), props);
+    }
+
+    private static long queryLong(Connection conn, QueryHandle handle, DatabaseMetrics.Timer timer, String sql,
+                                  Object... params) throws SQLException {
+        timer.query(sql, params);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            if (handle != null) handle.attach(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            } finally {
+                if (handle != null) handle.detach();
+            }
+        }
+    }
+
+    // С cursor = true строки читаются курсором порциями по FETCH_SIZE и сразу передаются в action,
+    // результат целиком в памяти не держится. primary = true - чтение мимо реплик
+    private long streamGames(Operation operation, String sql, QueryHandle handle, boolean cursor, boolean primary,
+                             Consumer<Game> action, Object... params) throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(operation);
+             Connection conn = primary ? borrow() : borrowForRead()) {
+            timer.query(sql, params);
+            if (cursor) conn.setAutoCommit(false); // Курсор PgJDBC работает только внутри транзакции
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                if (cursor) stmt.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setObject(i + 1, params[i]);
+                }
+                if (handle != null) handle.attach(stmt);
+                try {
+                    long count = 0;
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            if (handle != null && handle.isCancelled()) throw QueryHandle.cancelledException();
+                            action.accept(readGame(rs));
+                            count++;
+                        }
+                    }
+                    if (cursor) conn.commit();
+                    timer.complete(count, 0);
+                    return count;
+                } finally {
+                    if (handle != null) handle.detach();
+                }
             }
-            rs.close();
-            return !result.isEmpty() ? result.toString() : "No results";
         }
     }
 
+    // Чтение через кэш: строка берется из БД только при промахе. Строка с реплики в кэш не кладется:
+    // уведомление об изменении приходит от основного сервера и может опередить репликацию,
+    // тогда в кэше надолго осталась бы старая версия строки
     public Game getGameById(int id) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM games WHERE game_id = ?")) {
+        long start = System.nanoTime();
+        Game cached = cache.get(id);
+        if (cached != null) {
+            metrics.record(Operation.GET_GAME, start, 1, 0);
+            return cached;
+        }
+        long epoch = cache.currentEpoch();
+        ReplicaSet currentReplicas = pinnedToPrimary() ? null : replicas;
+        Connection replica = currentReplicas != null ? currentReplicas.tryBorrow() : null;
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.GET_GAME);
+             Connection conn = replica != null ? replica : borrow();
+             PreparedStatement stmt = conn.prepareStatement(GAME_BY_ID_SQL)) {
+            timer.query(GAME_BY_ID_SQL, id);
             stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new Game(
-                        rs.getInt("game_id"),
-                        rs.getString("title"),
-                        rs.getDate("release_date").toString(),
-                        rs.getDouble("rating")
-                );
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    timer.complete(0, 0);
+                    return null;
+                }
+                Game game = readGame(rs);
+                if (replica == null) cache.put(game, epoch);
+                timer.complete(1, 0);
+                return game;
             }
-            rs.close();
-            return null;
         }
     }
 
-    public void updateGame(int id, String title, String releaseDate, double rating) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("CALL update_game(?,?,?,?)")) {
+    public void updateGame(int id, String title, String releaseDate, Double rating) throws SQLException {
+        String sql = "CALL update_game(?,?,?,?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.UPDATE_GAME);
+             Connection conn = borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            timer.query(sql, id, title, releaseDate, rating);
             stmt.setInt(1, id);
             stmt.setString(2, title);
-            stmt.setDate(3, Date.valueOf(releaseDate));
-            stmt.setDouble(4, rating);
+            stmt.setObject(3, releaseDate == null ? null : Date.valueOf(releaseDate), Types.DATE);
+            stmt.setObject(4, rating, Types.DOUBLE);
             stmt.execute();
+            timer.complete(0, 1);
+        } finally {
+            cache.invalidate(id);
+            wrote();
+        }
+    }
+
+    // Пакетные операции: один запрос с параметрами-массивами на весь пакет, результат по каждой строке
+    public List<RowResult> addGames(Collection<Game> games) throws SQLException {
+        return applyBatch(games, List.of(), List.of()).adds();
+    }
+
+    public List<RowResult> upsertGames(Collection<Game> games) throws SQLException {
+        String sql = "SELECT * FROM upsert_games(?,?,?,?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.UPSERT_GAMES);
+             Connection conn = borrow()) {
+            timer.query(sql, games.size() + " games");
+            Map<Integer, Boolean> written = new HashMap<>();
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                bindGames(conn, stmt, games);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        written.put(rs.getInt(1), rs.getBoolean(2));
+                    }
+                }
+            }
+            List<RowResult> results = new ArrayList<>(games.size());
+            for (Game game : games) {
+                results.add(new RowResult(game.id(),
+                        written.get(game.id()) ? WriteOutcome.INSERTED : WriteOutcome.UPDATED));
+            }
+            timer.complete(0, written.size());
+            return results;
+        } finally {
+            games.forEach(game -> cache.invalidate(game.id()));
+            wrote();
         }
     }
 
+    public List<RowResult> updateGames(Collection<Game> games) throws SQLException {
+        return applyBatch(List.of(), games, List.of()).updates();
+    }
+
+    public List<RowResult> deleteByIds(Collection<Integer> ids) throws SQLException {
+        return applyBatch(List.of(), List.of(), ids).deletes();
+    }
+
+    // Добавления, изменения и удаления одной транзакцией, не больше трех запросов
+    public BatchResult applyBatch(Collection<Game> adds, Collection<Game> updates, Collection<Integer> deletes)
+            throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.APPLY_BATCH);
+             Connection conn = borrow()) {
+            timer.query("add_games/update_games/delete_games", adds.size() + " adds", updates.size() + " updates",
+                    deletes.size() + " deletes");
+            conn.setAutoCommit(false);
+            try {
+                List<RowResult> added = List.of();
+                List<RowResult> updated = List.of();
+                List<RowResult> deleted = List.of();
+                if (!adds.isEmpty()) {
+                    Set<Integer> ids = writeBatch(conn, "SELECT * FROM add_games(?,?,?,?)", adds);
+                    added = outcomes(adds.stream().map(Game::id).toList(), ids,
+                            WriteOutcome.INSERTED, WriteOutcome.DUPLICATE);
+                }
+                if (!updates.isEmpty()) {
+                    Set<Integer> ids = writeBatch(conn, "SELECT * FROM update_games(?,?,?,?)", updates);
+                    updated = outcomes(updates.stream().map(Game::id).toList(), ids,
+                            WriteOutcome.UPDATED, WriteOutcome.NOT_FOUND);
+                }
+                if (!deletes.isEmpty()) {
+                    Set<Integer> ids = new HashSet<>();
+                    try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM delete_games(?)")) {
+                        stmt.setArray(1, conn.createArrayOf("integer", deletes.toArray()));
+                        collectIds(stmt, ids);
+                    }
+                    deleted = outcomes(deletes, ids, WriteOutcome.DELETED, WriteOutcome.NOT_FOUND);
+                }
+                conn.commit();
+                BatchResult result = new BatchResult(added, updated, deleted);
+                timer.complete(0, result.written());
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            adds.forEach(game -> cache.invalidate(game.id()));
+            updates.forEach(game -> cache.invalidate(game.id()));
+            deletes.forEach(cache::invalidate);
+            wrote();
+        }
+    }
+
+    // Как applyBatch, но изменение и удаление применяются только к строкам, которые после expected.seenVersion
+    // не записывал никто другой (миграция V6); остальные получают исход CONFLICT. Строки без записи в expected
+    // не проверяются
+    public CheckedBatchResult applyCheckedBatch(Collection<Game> adds, Collection<Game> updates,
+                                                Collection<Integer> deletes, Map<Integer, Expected> expected)
+            throws SQLException {
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.APPLY_BATCH);
+             Connection conn = borrow()) {
+            timer.query("add_games/update_games_checked/delete_games_checked", adds.size() + " adds",
+                    updates.size() + " updates", deletes.size() + " deletes");
+            conn.setAutoCommit(false);
+            try {
+                List<RowResult> added = List.of();
+                List<RowResult> updated = List.of();
+                List<RowResult> deleted = List.of();
+                if (!adds.isEmpty()) {
+                    Set<Integer> ids = writeBatch(conn, "SELECT * FROM add_games(?,?,?,?)", adds);
+                    added = outcomes(adds.stream().map(Game::id).toList(), ids,
+                            WriteOutcome.INSERTED, WriteOutcome.DUPLICATE);
+                }
+                if (!updates.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT * FROM update_games_checked(?,?,?,?,?::pg_snapshot[],?::xid8[])")) {
+                        bindGames(conn, stmt, updates);
+                        List<Integer> ids = updates.stream().map(Game::id).toList();
+                        bindExpected(conn, stmt, 5, ids, expected);
+                        updated = checkedOutcomes(stmt, ids, WriteOutcome.UPDATED);
+                    }
+                }
+                if (!deletes.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT * FROM delete_games_checked(?,?::pg_snapshot[],?::xid8[])")) {
+                        stmt.setArray(1, conn.createArrayOf("integer", deletes.toArray()));
+                        bindExpected(conn, stmt, 2, deletes, expected);
+                        deleted = checkedOutcomes(stmt, deletes, WriteOutcome.DELETED);
+                    }
+                }
+                String version;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT pg_current_xact_id()::text")) {
+                    rs.next();
+                    version = rs.getString(1);
+                }
+                conn.commit();
+                BatchResult result = new BatchResult(added, updated, deleted);
+                timer.complete(0, result.written());
+                return new CheckedBatchResult(result, version);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            adds.forEach(game -> cache.invalidate(game.id()));
+            updates.forEach(game -> cache.invalidate(game.id()));
+            deletes.forEach(cache::invalidate);
+            wrote();
+        }
+    }
+
+    private static void bindExpected(Connection conn, PreparedStatement stmt, int first, Collection<Integer> ids,
+                                     Map<Integer, Expected> expected) throws SQLException {
+        String[] seen = new String[ids.size()];
+        String[] written = new String[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            Expected row = expected.get(id);
+            seen[i] = row != null ? row.seenVersion() : null;
+            written[i] = row != null ? row.writtenVersion() : null;
+            i++;
+        }
+        stmt.setArray(first, conn.createArrayOf("text", seen));
+        stmt.setArray(first + 1, conn.createArrayOf("text", written));
+    }
+
+    // Функции V6 возвращают только существующие строки: отсутствующие ID получают NOT_FOUND
+    private static List<RowResult> checkedOutcomes(PreparedStatement stmt, Collection<Integer> requested,
+                                                   WriteOutcome success) throws SQLException {
+        Map<Integer, Boolean> conflicts = new HashMap<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                conflicts.put(rs.getInt(1), rs.getBoolean(2));
+            }
+        }
+        List<RowResult> results = new ArrayList<>(requested.size());
+        for (Integer id : requested) {
+            Boolean conflict = conflicts.get(id);
+            results.add(new RowResult(id, conflict == null ? WriteOutcome.NOT_FOUND
+                    : conflict ? WriteOutcome.CONFLICT : success));
+        }
+        return results;
+    }
+
+    private static Set<Integer> writeBatch(Connection conn, String sql, Collection<Game> games) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindGames(conn, stmt, games);
+            collectIds(stmt, ids);
+        }
+        return ids;
+    }
+
+    private static void bindGames(Connection conn, PreparedStatement stmt, Collection<Game> games)
+            throws SQLException {
+        Integer[] ids = new Integer[games.size()];
+        String[] titles = new String[games.size()];
+        Date[] dates = new Date[games.size()];
+        Double[] ratings = new Double[games.size()];
+        int i = 0;
+        for (Game game : games) {
+            ids[i] = game.id();
+            titles[i] = game.title();
+            dates[i] = game.releaseDate() != null ? Date.valueOf(game.releaseDate()) : null;
+            ratings[i] = game.rating();
+            i++;
+        }
+        stmt.setArray(1, conn.createArrayOf("integer", ids));
+        stmt.setArray(2, conn.createArrayOf("varchar", titles));
+        stmt.setArray(3, conn.createArrayOf("date", dates));
+        stmt.setArray(4, conn.createArrayOf("float8", ratings));
+    }
+
+    private static void collectIds(PreparedStatement stmt, Set<Integer> ids) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+    }
+
+    // Каждый затронутый ID засчитывается один раз: повтор ID в пакете получает исход failure
+    private static List<RowResult> outcomes(Collection<Integer> requested, Set<Integer> affected,
+                                            WriteOutcome success, WriteOutcome failure) {
+        List<RowResult> results = new ArrayList<>(requested.size());
+        Set<Integer> claimed = new HashSet<>();
+        for (Integer id : requested) {
+            boolean ok = affected.contains(id) && claimed.add(id);
+            results.add(new RowResult(id, ok ? success : failure));
+        }
+        return results;
+    }
+
     public int deleteGame(String title) throws SQLException {
-        try (CallableStatement stmt = conn.prepareCall("CALL delete_by_title(?, ?)")) {
+        String sql = "CALL delete_by_title(?, ?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.DELETE_GAME);
+             Connection conn = borrow();
+             CallableStatement stmt = conn.prepareCall(sql)) {
+            timer.query(sql, title);
             stmt.setString(1, title);
             stmt.registerOutParameter(2, Types.INTEGER);
             stmt.execute();
-            return stmt.getInt(2);
+            int deleted = stmt.getInt(2);
+            timer.complete(0, deleted);
+            return deleted;
+        } finally {
+            cache.invalidateIf(game -> game.title().equals(title));
+            wrote();
         }
     }
 
     public void clearTable() throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("CALL clear_games_table()")) {
+        String sql = "CALL clear_games_table()";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.CLEAR_TABLE);
+             Connection conn = borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            timer.query(sql);
             stmt.execute();
+            timer.complete(0, 0);
+        } finally {
+            cache.invalidateAll();
+            wrote();
+        }
+    }
+
+    // Отключает от секционированной games эпохи, закончившиеся до before: строки уходят в таблицы
+    // games_archive_y<год> (drop = true - удаляются) без построчного удаления. Возвращает имена отключенных секций
+    public List<String> archiveGames(LocalDate before, boolean drop) throws SQLException {
+        String sql = "SELECT * FROM archive_games_before(?, ?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.ARCHIVE);
+             Connection conn = borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            timer.query(sql, before, drop);
+            stmt.setObject(1, before);
+            stmt.setBoolean(2, drop);
+            List<String> partitions = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+            }
+            timer.complete(0, partitions.size());
+            return partitions;
+        } finally {
+            cache.invalidateAll();
+            wrote();
         }
     }
 
     public void createUser(String username, String password, String role) throws SQLException {
-        try (PreparedStatement stmt = conn.prepareStatement("CALL create_db_user(?,?,?)")) {
+        String sql = "CALL create_db_user(?,?,?)";
+        try (DatabaseMetrics.Timer timer = metrics.start(Operation.CREATE_USER);
+             Connection conn = borrow();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            timer.query(sql, username, "***", role);
             stmt.setString(1, username);
             stmt.setString(2, password);
             stmt.setString(3, role);
             stmt.execute();
+            timer.complete(0, 1);
         }
     }
 
     public void deleteDatabase() throws SQLException {
         close();
-        Properties props = new Properties();
-        props.setProperty("user", Main.SUPER_USERNAME);
-        props.setProperty("password", Main.SUPER_PASSWORD);
-        try (Connection adminConn = DriverManager.getConnection("jdbc:postgresql://localhost:5432/postgres", props);
+        try (Connection adminConn = Main.maintenancePool().borrow();
              Statement stmt = adminConn.createStatement()) {
             stmt.execute("DROP DATABASE games_db");
             stmt.execute("DROP ROLE IF EXISTS admin_role");
@@ -126,6 +1032,105 @@ public class DatabaseManager {
         }
     }
 
-    public record Game(int id, String title, String releaseDate, double rating) {}
+    static Game readGame(ResultSet rs) throws SQLException {
+        Date releaseDate = rs.getDate("release_date");
+        return new Game(
+                rs.getInt("game_id"),
+                rs.getString("title"),
+                releaseDate != null ? releaseDate.toString() : null,
+                rs.getObject("rating", Double.class)
+        );
+    }
+
+    // Соединение с основным сервером: запись, DDL и чтение, которое должно видеть все зафиксированное
+    private Connection borrow() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) throw new SQLException("Not connected to the database");
+        return current.borrow();
+    }
+
+    // Чтение идет на реплику, если они есть, исправны и сеанс недавно ничего не записывал
+    private Connection borrowForRead() throws SQLException {
+        ReplicaSet current = replicas;
+        if (current != null && !pinnedToPrimary()) {
+            Connection conn = current.tryBorrow();
+            if (conn != null) return conn;
+        }
+        return borrow();
+    }
+
+    private boolean pinnedToPrimary() {
+        return session().pinnedUntil - System.nanoTime() > 0;
+    }
+
+    // Вызывается после каждой записи, в том числе неудачной: часть ее могла успеть зафиксироваться
+    private void wrote() {
+        session().pinnedUntil = System.nanoTime() + readYourWritesNanos;
+    }
+
+    private Session session() {
+        Session session = boundSession.get();
+        return session != null ? session : defaultSession;
+    }
+
+    // Привязывает сеанс к текущему потоку (null - отвязывает): чтения и записи потока учитываются в нем,
+    // а не в общем сеансе DatabaseManager
+    public void bindSession(Session session) {
+        if (session != null) {
+            boundSession.set(session);
+        } else {
+            boundSession.remove();
+        }
+    }
+
+    // Сеанс для чтения своих записей: в течение -Dgames.db.readYourWritesMillis (по умолчанию 3000, 0 - выключено)
+    // после записи чтения сеанса идут на основной сервер, чтобы не увидеть на отстающей реплике данные до записи.
+    // GUI работает в общем сеансе DatabaseManager, GameServer заводит сеанс на каждого пользователя
+    public static final class Session {
+        private volatile long pinnedUntil = System.nanoTime();
+    }
+
+    // rating = null - рейтинга нет (NULL)
+    public record Game(int id, String title, String releaseDate, Double rating) {}
+
+    // Результат getChangesSince: version - новая версия; при reset списки пусты и данные нужно перечитать.
+    // Удаления применяются раньше строк: id, удаленный и добавленный заново, есть в обоих списках.
+    // inserted - game_id строк из upserted, которых на момент прежней версии не было
+    public record Changes(String version, boolean reset, List<Game> upserted, Set<Integer> deleted,
+                          Set<Integer> inserted) {}
+
+    // next - ключ продолжения для queryGames, null на последней странице
+    public record GamePage(List<Game> games, String next) {}
+
+    // CONFLICT - строку после снимка, на котором основано изменение, записал другой клиент (applyCheckedBatch)
+    public enum WriteOutcome { INSERTED, UPDATED, DELETED, DUPLICATE, NOT_FOUND, CONFLICT }
+
+    // averageRating, minRating и maxRating равны null, если ни у одной игры нет рейтинга.
+    // ratingDistribution: начало интервала [n, n + 1) -> число игр; gamesPerYear: год -> число игр
+    public record Statistics(long games, long rated, Double averageRating, Double minRating, Double maxRating,
+                             Map<Integer, Long> ratingDistribution, Map<Integer, Long> gamesPerYear) {}
+
+    public record RowResult(int id, WriteOutcome outcome) {}
+
+    // version - снимок (pg_snapshot), в котором прочитана game; game = null - строки нет
+    public record SeenGame(Game game, String version) {}
+
+    // seenVersion - снимок (getChangeVersion), на котором основано изменение строки, null - без проверки;
+    // writtenVersion - версия собственной последней записи строки из CheckedBatchResult, ее конфликтом не считаем
+    public record Expected(String seenVersion, String writtenVersion) {}
+
+    // version - транзакция пакета: ее версию получили все записанные строки
+    public record CheckedBatchResult(BatchResult rows, String version) {}
+
+    public record BatchResult(List<RowResult> adds, List<RowResult> updates, List<RowResult> deletes) {
+        // Число строк, которые действительно были добавлены, изменены или удалены
+        public long written() {
+            return Stream.of(adds, updates, deletes)
+                    .flatMap(List::stream)
+                    .filter(row -> row.outcome() == WriteOutcome.INSERTED || row.outcome() == WriteOutcome.UPDATED
+                            || row.outcome() == WriteOutcome.DELETED)
+                    .count();
+        }
+    }
 
 }
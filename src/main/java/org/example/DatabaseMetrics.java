@@ -0,0 +1,177 @@
+package org.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Метрики операций DatabaseManager: гистограмма задержек, число вызовов, ошибок и прочитанных/записанных строк.
+// Операции дольше порога (-Dgames.metrics.slowQueryMillis) пишутся в журнал org.example.slowquery вместе с SQL
+// и параметрами, последние из них хранятся для просмотра через JMX
+public class DatabaseMetrics {
+    private static final Logger SLOW_QUERY_LOG = Logger.getLogger("org.example.slowquery");
+    private static final int RECENT_SLOW_QUERIES = 50;
+    private static final int MAX_BINDS_LENGTH = 500;
+
+    public enum Operation {
+        CONNECT, ADD_GAME, UPDATE_GAME, DELETE_GAME, GET_GAME, SEARCH, SEARCH_SIMILAR, QUERY, COUNT,
+        UPSERT_GAMES, APPLY_BATCH, CLEAR_TABLE, IMPORT, EXPORT, CREATE_USER, STATISTICS, TOP_RATED, CHANGES,
+        ARCHIVE
+    }
+
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+    private final ArrayDeque<String> recentSlowQueries = new ArrayDeque<>();
+    private volatile long slowQueryNanos;
+
+    public DatabaseMetrics(long slowQueryMillis) {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(slowQueryMillis, 0));
+    }
+
+    public static DatabaseMetrics fromSystemProperties() {
+        return new DatabaseMetrics(Long.getLong("games.metrics.slowQueryMillis", 500));
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+    }
+
+    public void setSlowQueryThresholdMillis(long millis) {
+        slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+    }
+
+    // Замер одной операции; закрывается в try-with-resources, операция без complete() считается ошибкой
+    public Timer start(Operation operation) {
+        return new Timer(operation);
+    }
+
+    // Для путей, которым не нужен журнал медленных запросов (например, попадание в кэш)
+    public void record(Operation operation, long startNanos, long rowsRead, long rowsWritten) {
+        operations.get(operation).record(System.nanoTime() - startNanos, rowsRead, rowsWritten, false);
+    }
+
+    public Snapshot snapshot(Operation operation) {
+        OperationStats stats = operations.get(operation);
+        return new Snapshot(operation, stats.histogram.snapshot(), stats.errors.sum(),
+                stats.rowsRead.sum(), stats.rowsWritten.sum());
+    }
+
+    public List<Snapshot> snapshots() {
+        List<Snapshot> result = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            result.add(snapshot(operation));
+        }
+        return result;
+    }
+
+    public synchronized List<String> getRecentSlowQueries() {
+        return new ArrayList<>(recentSlowQueries);
+    }
+
+    public void reset() {
+        for (OperationStats stats : operations.values()) {
+            stats.reset();
+        }
+        synchronized (this) {
+            recentSlowQueries.clear();
+        }
+    }
+
+    // Таблица по операциям, у которых были вызовы
+    public String dump() {
+        StringBuilder sb = new StringBuilder(String.format("%-15s %9s %7s %9s %9s %9s %9s %11s %12s%n",
+                "Operation", "Calls", "Errors", "Mean ms", "p50 ms", "p99 ms", "Max ms", "Rows read", "Rows written"));
+        for (Snapshot snapshot : snapshots()) {
+            if (snapshot.calls() > 0) sb.append(snapshot).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private void logSlowQuery(Operation operation, long nanos, boolean failed, String sql, Object[] binds) {
+        String binding = binds != null ? Arrays.deepToString(binds) : "[]";
+        if (binding.length() > MAX_BINDS_LENGTH) binding = binding.substring(0, MAX_BINDS_LENGTH) + "...";
+        String message = String.format("%s %.1f ms%s: %s %s", operation, nanos / 1e6, failed ? " (failed)" : "",
+                sql != null ? sql : "", binding);
+        SLOW_QUERY_LOG.log(Level.WARNING, message);
+        synchronized (this) {
+            if (recentSlowQueries.size() == RECENT_SLOW_QUERIES) recentSlowQueries.removeFirst();
+            recentSlowQueries.addLast(message);
+        }
+    }
+
+    public final class Timer implements AutoCloseable {
+        private final Operation operation;
+        private final long start = System.nanoTime();
+        private String sql;
+        private Object[] binds;
+        private long rowsRead;
+        private long rowsWritten;
+        private boolean completed;
+
+        private Timer(Operation operation) {
+            this.operation = operation;
+        }
+
+        // SQL и параметры для журнала медленных запросов; пароли и прочие секреты сюда передавать нельзя
+        public void query(String sql, Object... binds) {
+            this.sql = sql;
+            this.binds = binds;
+        }
+
+        public void complete(long rowsRead, long rowsWritten) {
+            this.rowsRead += rowsRead;
+            this.rowsWritten += rowsWritten;
+            this.completed = true;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            operations.get(operation).record(nanos, rowsRead, rowsWritten, !completed);
+            if (nanos >= slowQueryNanos) logSlowQuery(operation, nanos, !completed, sql, binds);
+        }
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rowsRead = new LongAdder();
+        final LongAdder rowsWritten = new LongAdder();
+
+        void record(long nanos, long read, long written, boolean failed) {
+            histogram.record(nanos);
+            if (failed) errors.increment();
+            rowsRead.add(read);
+            rowsWritten.add(written);
+        }
+
+        void reset() {
+            histogram.reset();
+            errors.reset();
+            rowsRead.reset();
+            rowsWritten.reset();
+        }
+    }
+
+    public record Snapshot(Operation operation, LatencyHistogram.Snapshot latency, long errors,
+                           long rowsRead, long rowsWritten) {
+        public long calls() {
+            return latency.count();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-15s %9d %7d %9.2f %9.2f %9.2f %9.2f %11d %12d", operation, calls(), errors,
+                    latency.meanNanos() / 1e6, latency.percentileNanos(50) / 1e6, latency.percentileNanos(99) / 1e6,
+                    latency.maxNanos() / 1e6, rowsRead, rowsWritten);
+        }
+    }
+}
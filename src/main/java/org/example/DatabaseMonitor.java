@@ -0,0 +1,126 @@
+package org.example;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+// MBean org.example:type=DatabaseMonitor,name="<пользователь>@<URL>", регистрируется на время подключения
+public class DatabaseMonitor implements DatabaseMonitorMBean {
+    private final DatabaseManager dbManager;
+    private final DatabaseMetrics metrics;
+    private final ObjectName name;
+
+    DatabaseMonitor(DatabaseManager dbManager, DatabaseMetrics metrics, String user, String url) {
+        this.dbManager = dbManager;
+        this.metrics = metrics;
+        try {
+            this.name = new ObjectName("org.example:type=DatabaseMonitor,name=" + ObjectName.quote(user + "@" + url));
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // Повторный вход тем же пользователем заменяет прежний MBean
+    void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            // Без JMX приложение работает как обычно, метрики остаются доступны через dump()
+        }
+    }
+
+    void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+        }
+    }
+
+    @Override
+    public String[] getOperations() {
+        return metrics.snapshots().stream()
+                .filter(snapshot -> snapshot.calls() > 0)
+                .map(DatabaseMetrics.Snapshot::toString)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public long getTotalCalls() {
+        return metrics.snapshots().stream().mapToLong(DatabaseMetrics.Snapshot::calls).sum();
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return metrics.snapshots().stream().mapToLong(DatabaseMetrics.Snapshot::errors).sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return metrics.snapshots().stream().mapToLong(DatabaseMetrics.Snapshot::rowsRead).sum();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return metrics.snapshots().stream().mapToLong(DatabaseMetrics.Snapshot::rowsWritten).sum();
+    }
+
+    @Override
+    public String getPoolStats() {
+        return String.valueOf(dbManager.getPoolStats());
+    }
+
+    @Override
+    public String[] getReplicaStats() {
+        return dbManager.getReplicaStats().stream().map(ReplicaSet.Stats::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public String getStatementStats() {
+        return String.valueOf(dbManager.getStatementStats());
+    }
+
+    @Override
+    public String getCacheStats() {
+        return dbManager.getCacheStats().toString();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return dbManager.getCacheStats().hitRate();
+    }
+
+    @Override
+    public String[] getRecentSlowQueries() {
+        List<String> queries = metrics.getRecentSlowQueries();
+        return queries.toArray(new String[0]);
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return metrics.getSlowQueryThresholdMillis();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMillis(long millis) {
+        metrics.setSlowQueryThresholdMillis(millis);
+    }
+
+    @Override
+    public String dump() {
+        return dbManager.dumpMetrics();
+    }
+
+    @Override
+    public void resetMetrics() {
+        metrics.reset();
+    }
+}
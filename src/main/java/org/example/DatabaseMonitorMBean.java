@@ -0,0 +1,35 @@
+package org.example;
+
+// Интерфейс JMX (jconsole, VisualVM): метрики операций вместе со статистикой пула, кэша и подготовленных выражений
+public interface DatabaseMonitorMBean {
+    String[] getOperations();
+
+    long getTotalCalls();
+
+    long getTotalErrors();
+
+    long getRowsRead();
+
+    long getRowsWritten();
+
+    String getPoolStats();
+
+    // По строке на реплику: доступность, отставание и пул
+    String[] getReplicaStats();
+
+    String getStatementStats();
+
+    String getCacheStats();
+
+    double getCacheHitRate();
+
+    String[] getRecentSlowQueries();
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long millis);
+
+    String dump();
+
+    void resetMetrics();
+}
@@ -0,0 +1,321 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+// Отложенная запись правок (write-behind). Добавления, изменения и удаления копятся локально, правки одного
+// game_id сливаются в одну так, как если бы применялись по порядку, и уходят одной транзакцией
+// applyCheckedBatch раз в flushMillis или сразу, когда правок набралось maxPending.
+// Изменение и удаление несут снимок данных, который видел пользователь: если строку после него записал
+// другой клиент, правка не применяется и возвращается с исходом CONFLICT.
+// Каждая правка до возврата из метода дописывается в журнал и сбрасывается на диск, при создании очереди
+// неотправленные правки из журнала восстанавливаются. Правка, отправленная перед сбоем, но еще не убранная
+// из журнала, после восстановления отправится повторно и вернется как DUPLICATE или CONFLICT
+public final class EditQueue implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger("org.example.edits");
+
+    private final DatabaseManager dbManager;
+    private final Config config;
+    private final Consumer<Flush> listener;
+    // game_id -> слитая правка, в порядке первой правки
+    private final Map<Integer, Edit> pending = new LinkedHashMap<>();
+    // game_id -> версия последней собственной записи строки; доступ только под flushLock
+    private final Map<Integer, String> written = new HashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private FileChannel journal;
+    private boolean flushQueued;
+
+    // listener получает итог каждой отправки в потоке, который ее выполнил
+    public EditQueue(DatabaseManager dbManager, Config config, Consumer<Flush> listener) throws IOException {
+        this.dbManager = dbManager;
+        this.config = config;
+        this.listener = listener;
+        recover();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edit-queue-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, config.flushMillis(), config.flushMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void add(DatabaseManager.Game game) throws IOException {
+        enqueue(new Edit(Kind.ADD, game.id(), game, null));
+    }
+
+    // seenVersion - версия данных (getChangeVersion), взятая до чтения строки, которую правит пользователь
+    public void update(DatabaseManager.Game game, String seenVersion) throws IOException {
+        enqueue(new Edit(Kind.UPDATE, game.id(), game, seenVersion));
+    }
+
+    public void delete(int id, String seenVersion) throws IOException {
+        enqueue(new Edit(Kind.DELETE, id, null, seenVersion));
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    // Отправляет накопленные правки; правки, добавленные во время отправки, уходят следующим пакетом.
+    // Пакет, который сервер отверг из-за самих данных, делится пополам и отправляется по частям, пока ошибка
+    // не останется за одной правкой: отбрасываются только такие правки, при повторе они тоже не применились бы.
+    // Если сервер недоступен, еще не примененные правки возвращаются в очередь и отправятся снова
+    public Flush flush() {
+        synchronized (flushLock) {
+            Map<Integer, Edit> batch;
+            synchronized (this) {
+                flushQueued = false;
+                if (pending.isEmpty()) return new Flush(0, 0, List.of(), Map.of(), null, false);
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+            Progress progress = new Progress();
+            Flush result;
+            try {
+                send(new ArrayList<>(batch.values()), progress);
+                result = new Flush(batch.size(), progress.written, progress.rejected, progress.invalid, null, false);
+            } catch (SQLException e) {
+                synchronized (this) {
+                    // Более поздние правки сливаются поверх возвращенных
+                    Map<Integer, Edit> restored = new LinkedHashMap<>(batch);
+                    restored.keySet().removeAll(progress.done);
+                    pending.values().forEach(edit -> merge(restored, edit));
+                    pending.clear();
+                    pending.putAll(restored);
+                }
+                result = new Flush(batch.size(), progress.written, progress.rejected, progress.invalid, e, true);
+            }
+            synchronized (this) {
+                try {
+                    rewriteJournal();
+                } catch (IOException e) {
+                    LOG.warning("Cannot rewrite edit journal " + config.journal() + ": " + e.getMessage());
+                }
+            }
+            listener.accept(result);
+            return result;
+        }
+    }
+
+    // Правки разных game_id независимы, поэтому пакет можно делить в любом месте. Ошибка связи пробрасывается
+    private void send(List<Edit> edits, Progress progress) throws SQLException {
+        List<DatabaseManager.Game> adds = new ArrayList<>();
+        List<DatabaseManager.Game> updates = new ArrayList<>();
+        List<Integer> deletes = new ArrayList<>();
+        Map<Integer, DatabaseManager.Expected> expected = new HashMap<>();
+        for (Edit edit : edits) {
+            switch (edit.kind()) {
+                case ADD -> adds.add(edit.game());
+                case UPDATE -> updates.add(edit.game());
+                case DELETE -> deletes.add(edit.id());
+            }
+            if (edit.kind() != Kind.ADD) {
+                expected.put(edit.id(), new DatabaseManager.Expected(edit.seenVersion(), written.get(edit.id())));
+            }
+        }
+        DatabaseManager.CheckedBatchResult applied;
+        try {
+            applied = dbManager.applyCheckedBatch(adds, updates, deletes, expected);
+        } catch (SQLException e) {
+            if (!isDataError(e)) throw e;
+            if (edits.size() == 1) {
+                progress.invalid.put(edits.getFirst().id(), e);
+                progress.done.add(edits.getFirst().id());
+                return;
+            }
+            int half = edits.size() / 2;
+            send(edits.subList(0, half), progress);
+            send(edits.subList(half, edits.size()), progress);
+            return;
+        }
+        for (List<DatabaseManager.RowResult> rows : List.of(applied.rows().adds(), applied.rows().updates(),
+                applied.rows().deletes())) {
+            for (DatabaseManager.RowResult row : rows) {
+                switch (row.outcome()) {
+                    case INSERTED, UPDATED -> written.put(row.id(), applied.version());
+                    case DELETED -> written.remove(row.id());
+                    default -> progress.rejected.add(row);
+                }
+                progress.done.add(row.id());
+            }
+        }
+        progress.written += applied.rows().written();
+    }
+
+    // Останавливает таймер и отправляет оставшиеся правки; не отправленные остаются в журнале
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            journal.close();
+        }
+    }
+
+    private synchronized void enqueue(Edit edit) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((toJson(edit) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            journal.write(line);
+        }
+        journal.force(false);
+        merge(pending, edit);
+        if (pending.size() >= config.maxPending() && !flushQueued) {
+            flushQueued = true;
+            flusher.execute(this::flush);
+        }
+    }
+
+    // Слияние со следующей правкой того же game_id с тем же итогом, что и у последовательного применения.
+    // Проверка версии идет от снимка первой правки: вторая основана на первой, а не на данных сервера
+    static void merge(Map<Integer, Edit> edits, Edit next) {
+        Edit previous = edits.get(next.id());
+        Edit merged = previous == null ? next : switch (previous.kind()) {
+            case ADD -> switch (next.kind()) {
+                case ADD -> previous; // Повторное добавление того же ID было бы дубликатом
+                case UPDATE -> new Edit(Kind.ADD, next.id(), next.game(), null);
+                case DELETE -> null; // Добавленная и сразу удаленная строка на сервер не попадает
+            };
+            case UPDATE -> switch (next.kind()) {
+                case ADD -> previous;
+                case UPDATE -> new Edit(Kind.UPDATE, next.id(), next.game(), previous.seenVersion());
+                case DELETE -> new Edit(Kind.DELETE, next.id(), null, previous.seenVersion());
+            };
+            case DELETE -> switch (next.kind()) {
+                case ADD -> new Edit(Kind.UPDATE, next.id(), next.game(), previous.seenVersion());
+                case UPDATE, DELETE -> previous; // Строки уже нет
+            };
+        };
+        if (merged == null) {
+            edits.remove(next.id());
+        } else {
+            edits.put(next.id(), merged);
+        }
+    }
+
+    // Ошибки данных (класс 22) и нарушения ограничений (класс 23)
+    private static boolean isDataError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private void recover() throws IOException {
+        Path path = config.journal();
+        pending.putAll(readJournal(path));
+        if (!pending.isEmpty()) LOG.info("Recovered " + pending.size() + " pending edits from " + path);
+        rewriteJournal();
+    }
+
+    // Слитые правки из журнала; нет файла - нет правок
+    static Map<Integer, Edit> readJournal(Path path) throws IOException {
+        Map<Integer, Edit> edits = new LinkedHashMap<>();
+        if (!Files.exists(path)) return edits;
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).isBlank()) continue;
+            try {
+                merge(edits, fromJson(lines.get(i)));
+            } catch (RuntimeException e) {
+                // Недописанная при сбое последняя строка: правка не была подтверждена
+                LOG.warning("Skipping unreadable line " + (i + 1) + " of edit journal " + path + ": "
+                        + e.getMessage());
+            }
+        }
+        return edits;
+    }
+
+    // Журнал заменяется переименованием, поэтому при сбое на диске остается либо старый, либо новый
+    private void rewriteJournal() throws IOException {
+        Path path = config.journal();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder text = new StringBuilder();
+            for (Edit edit : pending.values()) {
+                text.append(toJson(edit)).append('\n');
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(false);
+        }
+        if (journal != null) journal.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static String toJson(Edit edit) {
+        DatabaseManager.Game game = edit.game();
+        return "{\"kind\":" + Json.quote(edit.kind().name())
+                + ",\"id\":" + edit.id()
+                + ",\"title\":" + Json.quote(game != null ? game.title() : null)
+                + ",\"releaseDate\":" + Json.quote(game != null ? game.releaseDate() : null)
+                + ",\"rating\":" + (game != null ? Json.number(game.rating()) : "null")
+                + ",\"seen\":" + Json.quote(edit.seenVersion()) + "}";
+    }
+
+    private static Edit fromJson(String line) {
+        Map<String, Object> fields = Json.parseObject(line);
+        Kind kind = Kind.valueOf((String) fields.get("kind"));
+        int id = ((Double) fields.get("id")).intValue();
+        DatabaseManager.Game game = kind == Kind.DELETE ? null : new DatabaseManager.Game(id,
+                (String) fields.get("title"), (String) fields.get("releaseDate"),
+                (Double) fields.get("rating"));
+        return new Edit(kind, id, game, (String) fields.get("seen"));
+    }
+
+    enum Kind { ADD, UPDATE, DELETE }
+
+    // game = null у удаления
+    record Edit(Kind kind, int id, DatabaseManager.Game game, String seenVersion) {}
+
+    // sent - слитых правок в пакете, written - примененных; rejected - DUPLICATE, NOT_FOUND и CONFLICT;
+    // invalid - game_id -> ошибка данных, из-за которой правка отброшена; error - ошибка связи, при ней
+    // requeued = true и не примененные правки остались в очереди
+    public record Flush(int sent, long written, List<DatabaseManager.RowResult> rejected,
+                        Map<Integer, SQLException> invalid, SQLException error, boolean requeued) {}
+
+    // Итог отправки пакета по частям; done - game_id правок, которые больше не нужно отправлять
+    private static final class Progress {
+        final List<DatabaseManager.RowResult> rejected = new ArrayList<>();
+        final Map<Integer, SQLException> invalid = new LinkedHashMap<>();
+        final Set<Integer> done = new HashSet<>();
+        long written;
+    }
+
+    // Настройки задаются через -Dgames.edits.flushMillis, -Dgames.edits.maxPending и -Dgames.edits.journal
+    public record Config(long flushMillis, int maxPending, Path journal) {
+        public static Config fromSystemProperties() {
+            return new Config(Long.getLong("games.edits.flushMillis", 1_000),
+                    Integer.getInteger("games.edits.maxPending", 200),
+                    Path.of(System.getProperty("games.edits.journal", "games-edits.journal")));
+        }
+    }
+}
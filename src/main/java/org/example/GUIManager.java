@@ -1,98 +1,341 @@
 package org.example;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class GUIManager {
+    private static final int FUZZY_RESULTS = 100;
+    private static final int SEARCH_DEBOUNCE_MILLIS = 300;
+    private static final int TOP_RATED = 10;
+
     private final DatabaseManager dbManager;
-    private DefaultTableModel tableModel;
+    // Отложенная запись правок (-Dgames.edits.writeBehind=true), null - каждая правка пишется сразу
+    private EditQueue editQueue;
+    // Запросы к БД выполняются в виртуальных потоках, результаты возвращаются в EDT через invokeLater
+    private final ExecutorService dbExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private GameTableModel tableModel;
+    private JTable table;
     private JTextField searchField;
+    private JCheckBox fuzzyCheckBox;
+    private JTextField prefixField;
+    private JTextField releasedFromField;
+    private JTextField releasedToField;
+    private JTextField minRatingField;
+    private JTextField maxRatingField;
+    private JLabel statusLabel;
+    private JLabel progressLabel;
+    private boolean closing;
 
     public GUIManager(DatabaseManager dbManager) {
         this.dbManager = dbManager;
     }
 
     public void createAndShowGUI() {
+        createAndShowGUI(null, null);
+    }
+
+    // initialPage - заранее прочитанная первая страница таблицы без фильтра, null - загрузить ее после открытия;
+    // initialVersion - версия данных, взятая до чтения этой страницы
+    public void createAndShowGUI(DatabaseManager.GamePage initialPage, String initialVersion) {
         JFrame frame = new JFrame("Game Database Manager - " + dbManager.getCurrentRole());
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         frame.setSize(800, 600);
 
         frame.addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
-                try {
-                    dbManager.close();
-                } catch (SQLException ex) {
-                    JOptionPane.showMessageDialog(null, "Error closing connection: " + ex.getMessage());
-                }
+                close(frame);
             }
         });
 
-        String[] columnNames = {"ID", "Title", "Release Date", "Rating"};
-        tableModel = new DefaultTableModel(columnNames, 0);
-        JTable table = new JTable(tableModel);
-        refreshTable("");
+        tableModel = new GameTableModel(dbManager, dbExecutor,
+                e -> JOptionPane.showMessageDialog(null, "Error refreshing table: " + message(e)));
+        table = new JTable(tableModel);
+        table.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) tableModel.toggleSort(table.convertColumnIndexToModel(column));
+            }
+        });
         JScrollPane scrollPane = new JScrollPane(table);
         frame.add(scrollPane, BorderLayout.CENTER);
 
         JPanel searchPanel = new JPanel(new FlowLayout());
         searchField = new JTextField(20);
         JButton searchButton = new JButton("Search by Title");
+        fuzzyCheckBox = new JCheckBox("Fuzzy");
+        fuzzyCheckBox.setToolTipText("Typo-tolerant search, best matches first");
         searchPanel.add(new JLabel("Search Title:"));
         searchPanel.add(searchField);
+        searchPanel.add(fuzzyCheckBox);
         searchPanel.add(searchButton);
-        frame.add(searchPanel, BorderLayout.NORTH);
+
+        // Фильтры по началу названия, дате выпуска и рейтингу; пустое поле - без ограничения
+        JPanel filterPanel = new JPanel(new FlowLayout());
+        prefixField = new JTextField(8);
+        releasedFromField = new JTextField(7);
+        releasedToField = new JTextField(7);
+        minRatingField = new JTextField(3);
+        maxRatingField = new JTextField(3);
+        releasedFromField.setToolTipText("YYYY-MM-DD");
+        releasedToField.setToolTipText("YYYY-MM-DD");
+        JButton filterButton = new JButton("Filter");
+        filterPanel.add(new JLabel("Starts with:"));
+        filterPanel.add(prefixField);
+        filterPanel.add(new JLabel("Released:"));
+        filterPanel.add(releasedFromField);
+        filterPanel.add(new JLabel("-"));
+        filterPanel.add(releasedToField);
+        filterPanel.add(new JLabel("Rating:"));
+        filterPanel.add(minRatingField);
+        filterPanel.add(new JLabel("-"));
+        filterPanel.add(maxRatingField);
+        filterPanel.add(filterButton);
+
+        JPanel northPanel = new JPanel(new GridLayout(0, 1));
+        northPanel.add(searchPanel);
+        northPanel.add(filterPanel);
+        frame.add(northPanel, BorderLayout.NORTH);
 
         JPanel buttonPanel = new JPanel(new GridLayout(0, 1));
         JButton addButton = new JButton("Add Game");
+        JButton importButton = new JButton("Import CSV");
+        JButton exportButton = new JButton("Export");
         JButton updateButton = new JButton("Update Game");
         JButton deleteButton = new JButton("Delete by Title");
+        JButton deleteSelectedButton = new JButton("Delete Selected");
         JButton clearButton = new JButton("Clear Table");
         JButton createUserButton = new JButton("Create User");
         JButton deleteDbButton = new JButton("Delete Database");
+        JButton diagnosticsButton = new JButton("Diagnostics");
+        JButton statisticsButton = new JButton("Statistics");
 
         buttonPanel.add(addButton);
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportButton);
         buttonPanel.add(updateButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(deleteSelectedButton);
         buttonPanel.add(clearButton);
         buttonPanel.add(createUserButton);
         buttonPanel.add(deleteDbButton);
+        buttonPanel.add(diagnosticsButton);
+        buttonPanel.add(statisticsButton);
 
         frame.add(buttonPanel, BorderLayout.EAST);
 
-        searchButton.addActionListener(_ -> searchGames());
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        progressLabel = new JLabel(" ");
+        statusPanel.add(statusLabel, BorderLayout.WEST);
+        statusPanel.add(progressLabel, BorderLayout.EAST);
+        frame.add(statusPanel, BorderLayout.SOUTH);
+        new Timer(1000, _ -> updateStatus()).start();
+
+        // Поиск по мере ввода: запрос уходит, когда пользователь перестал печатать
+        Timer searchDebounce = new Timer(SEARCH_DEBOUNCE_MILLIS, _ -> searchGames());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+        });
+
+        searchButton.addActionListener(_ -> {
+            searchDebounce.stop();
+            searchGames();
+        });
+        searchField.addActionListener(_ -> {
+            searchDebounce.stop();
+            searchGames();
+        });
+        fuzzyCheckBox.addActionListener(_ -> searchGames());
+        filterButton.addActionListener(_ -> searchGames());
+        for (JTextField field : List.of(prefixField, releasedFromField, releasedToField, minRatingField,
+                maxRatingField)) {
+            field.addActionListener(_ -> searchGames());
+        }
         addButton.addActionListener(_ -> addGame());
+        importButton.addActionListener(_ -> importCsv());
+        exportButton.addActionListener(_ -> exportGames());
         updateButton.addActionListener(_ -> updateGame());
         deleteButton.addActionListener(_ -> deleteGame());
+        deleteSelectedButton.addActionListener(_ -> deleteSelected());
         clearButton.addActionListener(_ -> clearTable());
         createUserButton.addActionListener(_ -> createUser());
         deleteDbButton.addActionListener(_ -> deleteDatabase());
+        diagnosticsButton.addActionListener(_ -> showDiagnostics());
+        statisticsButton.addActionListener(_ -> showStatistics());
 
+        if (Boolean.getBoolean("games.edits.writeBehind") && !dbManager.getCurrentRole().equals("guest")) {
+            try {
+                editQueue = new EditQueue(dbManager, EditQueue.Config.fromSystemProperties(),
+                        flush -> SwingUtilities.invokeLater(() -> editsFlushed(flush)));
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "Edit journal unavailable, edits are written immediately: "
+                        + e.getMessage());
+            }
+        }
+        // Изменения из любых сеансов (уведомления games_changed) доходят до таблицы дельтой
+        dbManager.addChangeSubscriber(() -> SwingUtilities.invokeLater(tableModel::refreshChanges));
+        tableModel.setQuery(GameQuery.all(), initialPage, initialVersion);
         frame.setVisible(true);
     }
 
-    private void refreshTable(String searchTitle) {
-        try {
-            tableModel.setRowCount(0);
-            String result = dbManager.searchGames(searchTitle);
-            if (!result.equals("No results")) {
-                String[] lines = result.split("\n");
-                for (String line : lines) {
-                    String[] parts = line.split(", ");
-                    String id = parts[0].substring(4);
-                    String title = parts[1].substring(7);
-                    String date = parts[2].substring(6);
-                    String rating = parts[3].substring(8);
-                    tableModel.addRow(new Object[]{id, title, date, rating});
+    // Отправка оставшихся правок может ждать сервер, поэтому очередь и пул закрываются в фоне, а окно
+    // закрывается после них. Повторное закрытие выходит сразу: неотправленные правки остаются в журнале
+    private void close(JFrame frame) {
+        if (closing) System.exit(0);
+        closing = true;
+        tableModel.cancelAll();
+        int pending = editQueue != null ? editQueue.pendingCount() : 0;
+        progressLabel.setText(pending > 0 ? "Saving " + pending + " edit(s), close again to exit without waiting"
+                : "Closing...");
+        Thread closer = new Thread(() -> {
+            List<String> errors = new ArrayList<>();
+            if (editQueue != null) {
+                try {
+                    editQueue.close();
+                } catch (IOException e) {
+                    errors.add("Error closing edit journal: " + e.getMessage());
                 }
             }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Error refreshing table: " + e.getMessage());
+            dbExecutor.shutdownNow();
+            try {
+                dbManager.close();
+            } catch (SQLException e) {
+                errors.add("Error closing connection: " + e.getMessage());
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (!errors.isEmpty()) JOptionPane.showMessageDialog(null, String.join("\n", errors));
+                frame.dispose();
+                System.exit(0);
+            });
+        }, "gui-close");
+        closer.start();
+    }
+
+    private void updateStatus() {
+        ConnectionPool.Stats stats = dbManager.getPoolStats();
+        String pending = editQueue != null ? " | " + editQueue.pendingCount() + " pending edits" : "";
+        statusLabel.setText(stats != null
+                ? stats + " | " + dbManager.getCacheStats() + " | " + dbManager.getStatementStats() + pending
+                : "Disconnected");
+    }
+
+    // Итог отправки отложенных правок: отвергнутые правки показываются, таблица получает примененные
+    private void editsFlushed(EditQueue.Flush flush) {
+        // Сервер недоступен: правки остались в очереди, окно при каждой попытке не показываем
+        progressLabel.setText(flush.requeued() ? "Edits not saved, retrying: " + flush.error().getMessage() : " ");
+        if (!flush.rejected().isEmpty() || !flush.invalid().isEmpty()) {
+            StringBuilder text = new StringBuilder((flush.rejected().size() + flush.invalid().size())
+                    + " edit(s) were not applied:");
+            for (DatabaseManager.RowResult row : flush.rejected()) {
+                text.append("\nGame ").append(row.id()).append(": ").append(switch (row.outcome()) {
+                    case CONFLICT -> "changed by another user, reload it and edit again";
+                    case DUPLICATE -> "a game with this ID already exists";
+                    default -> "not found";
+                });
+            }
+            flush.invalid().forEach((id, e) -> text.append("\nGame ").append(id).append(": rejected by the server: ")
+                    .append(e.getMessage()));
+            JOptionPane.showMessageDialog(null, text.toString());
         }
+        // При закрытии окна фоновые запросы таблицы уже остановлены
+        if (flush.written() > 0 && !closing) tableModel.refreshChanges();
+    }
+
+    // Синхронные операции сначала дожидаются отправки отложенных правок, чтобы выполниться после них
+    private void flushEdits() {
+        if (editQueue != null) editQueue.flush();
+    }
+
+    // Новый поиск отменяет запросы предыдущего, модель загружает только видимые страницы
+    private void refreshTable(String searchTitle) {
+        if (fuzzyCheckBox.isSelected() && !searchTitle.isBlank()) {
+            tableModel.showRanked(searchTitle, FUZZY_RESULTS);
+            return;
+        }
+        try {
+            tableModel.setQuery(currentQuery(searchTitle));
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(null, "Error: Invalid date format. Use YYYY-MM-DD.");
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Error: Invalid rating: " + e.getMessage());
+        }
+    }
+
+    // Запрос по полям фильтра и текущей сортировке таблицы
+    private GameQuery currentQuery(String searchTitle) {
+        GameQuery current = tableModel.getQuery();
+        return new GameQuery(searchTitle, prefixField.getText(),
+                parseDate(releasedFromField), parseDate(releasedToField),
+                parseRating(minRatingField), parseRating(maxRatingField),
+                current.sort(), current.descending());
+    }
+
+    private static LocalDate parseDate(JTextField field) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? null : LocalDate.parse(text);
+    }
+
+    private static Double parseRating(JTextField field) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? null : Double.valueOf(text);
+    }
+
+    private <T> void runInBackground(DbTask<T> task, Consumer<T> onSuccess) {
+        runInBackground(task, onSuccess, e -> JOptionPane.showMessageDialog(null, "Error: " + message(e)));
+    }
+
+    // Непроверяемое исключение задачи тоже доходит до onError, а не теряется в фоновом потоке
+    private <T> void runInBackground(DbTask<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        dbExecutor.execute(() -> {
+            try {
+                T result = task.run();
+                SwingUtilities.invokeLater(() -> onSuccess.accept(result));
+            } catch (SQLException | RuntimeException e) {
+                SwingUtilities.invokeLater(() -> onError.accept(e));
+            }
+        });
+    }
+
+    // У NullPointerException и подобных сообщения может не быть
+    private static String message(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
     }
 
     private void addGame() {
@@ -123,20 +366,112 @@ public class GUIManager {
             if (ratingStr == null) return;
             double rating = Double.parseDouble(ratingStr);
 
-            dbManager.addGame(id, title, releaseDate, rating);
-            JOptionPane.showMessageDialog(null, "Game added successfully");
-            refreshTable(searchField.getText());
-        } catch (SQLException e) {
-            if (e.getMessage().contains("already exists")) {
-                JOptionPane.showMessageDialog(null, "Error: A game with this ID already exists.");
-            } else {
-                JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
+            if (editQueue != null) {
+                try {
+                    editQueue.add(new DatabaseManager.Game(id, title, releaseDate, rating));
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(null, "Error: Cannot queue edit: " + e.getMessage());
+                }
+                return;
             }
+            runInBackground(() -> {
+                dbManager.addGame(id, title, releaseDate, rating);
+                return null;
+            }, _ -> {
+                JOptionPane.showMessageDialog(null, "Game added successfully");
+                tableModel.refreshChanges();
+            }, e -> {
+                if (message(e).contains("already exists")) {
+                    JOptionPane.showMessageDialog(null, "Error: A game with this ID already exists.");
+                } else {
+                    JOptionPane.showMessageDialog(null, "Error: " + message(e));
+                }
+            });
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(null, "Error: Invalid number format");
         }
     }
 
+    private void importCsv() {
+        if (dbManager.getCurrentRole().equals("guest")) {
+            JOptionPane.showMessageDialog(null, "Error: Guests do not have permission to import games.");
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+
+        GameImporter.DuplicatePolicy[] policies = GameImporter.DuplicatePolicy.values();
+        int choice = JOptionPane.showOptionDialog(null,
+                "Columns: game_id, title, release_date, rating.\nWhat to do with game IDs that already exist?",
+                "Import CSV", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, policies, policies[0]);
+        if (choice < 0) return;
+        GameImporter.DuplicatePolicy policy = policies[choice];
+        boolean header = JOptionPane.showConfirmDialog(null, "Does the file start with a header row?",
+                "Import CSV", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION;
+
+        runInBackground(() -> {
+            flushEdits();
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                return dbManager.importCsv(in, header, policy, progress -> SwingUtilities.invokeLater(() ->
+                        progressLabel.setText(String.format("Importing: %,d rows, %.1f MB, %,.0f rows/s",
+                                progress.rowsRead(), progress.bytesRead() / 1e6, progress.rowsPerSecond()))));
+            } catch (IOException e) {
+                throw new SQLException("Cannot read " + file + ": " + e.getMessage(), e);
+            }
+        }, result -> {
+            progressLabel.setText(" ");
+            JOptionPane.showMessageDialog(null, String.format(
+                    "Imported %,d rows in %.1f s (%,.0f rows/s)%nInserted: %,d, updated: %,d, skipped: %,d",
+                    result.rowsCopied(), result.elapsedNanos() / 1e9, result.rowsPerSecond(),
+                    result.rowsInserted(), result.rowsUpdated(), result.rowsSkipped()));
+            tableModel.refreshChanges();
+        }, e -> {
+            progressLabel.setText(" ");
+            JOptionPane.showMessageDialog(null, "Import failed: " + message(e));
+        });
+    }
+
+    // Выгружаются те же игры, что показывает таблица (кроме нечеткого поиска); файл с расширением .gz сжимается
+    private void exportGames() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+
+        GameExporter.Format[] formats = GameExporter.Format.values();
+        int choice = JOptionPane.showOptionDialog(null, "Export format:", "Export",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, formats, formats[0]);
+        if (choice < 0) return;
+        GameExporter.Format format = formats[choice];
+        boolean gzip = file.getName().endsWith(".gz");
+        GameExporter.Filter filter;
+        try {
+            filter = GameExporter.Filter.of(currentQuery(searchField.getText()));
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(null, "Error: Invalid date format. Use YYYY-MM-DD.");
+            return;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, "Error: Invalid rating: " + e.getMessage());
+            return;
+        }
+
+        runInBackground(() -> {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+                return dbManager.exportGames(out, filter, format, gzip, progress -> SwingUtilities.invokeLater(() ->
+                        progressLabel.setText(String.format("Exporting: %.1f MB, %.1f MB/s",
+                                progress.bytesWritten() / 1e6, progress.megabytesPerSecond()))));
+            } catch (IOException e) {
+                throw new SQLException("Cannot write " + file + ": " + e.getMessage(), e);
+            }
+        }, rows -> {
+            progressLabel.setText(" ");
+            JOptionPane.showMessageDialog(null, String.format("Exported %,d rows to %s", rows, file));
+        }, e -> {
+            progressLabel.setText(" ");
+            JOptionPane.showMessageDialog(null, "Export failed: " + message(e));
+        });
+    }
+
     private void searchGames() {
         String searchTitle = searchField.getText();
         refreshTable(searchTitle);
@@ -152,19 +487,30 @@ public class GUIManager {
             if (idStr == null) return;
             int id = Integer.parseInt(idStr);
 
-            DatabaseManager.Game currentGame = dbManager.getGameById(id);
-            if (currentGame == null) {
-                JOptionPane.showMessageDialog(null, "Game with ID " + id + " not found");
-                return;
-            }
+            // Правка в очереди проверяется по версии, в снимке которой прочитана строка
+            runInBackground(() -> editQueue != null ? dbManager.getGameForEdit(id)
+                    : new DatabaseManager.SeenGame(dbManager.getGameById(id), null), seen -> {
+                if (seen.game() == null) {
+                    JOptionPane.showMessageDialog(null, "Game with ID " + id + " not found");
+                } else {
+                    showUpdateDialog(seen.game(), seen.version());
+                }
+            });
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(null, "Error: Invalid number format");
+        }
+    }
 
+    private void showUpdateDialog(DatabaseManager.Game currentGame, String seenVersion) {
+        try {
             JTextField titleField = new JTextField(currentGame.title(), 15);
             JTextField dateField = new JTextField(currentGame.releaseDate(), 15);
-            JTextField ratingField = new JTextField(String.valueOf(currentGame.rating()), 15);
+            JTextField ratingField = new JTextField(
+                    currentGame.rating() != null ? String.valueOf(currentGame.rating()) : "", 15);
             JPanel panel = new JPanel(new GridLayout(3, 2));
             panel.add(new JLabel("Title (leave empty to keep unchanged):"));
             panel.add(titleField);
-            panel.add(new JLabel("Release Date (YYYY-MM-DD, leave empty to keep unchanged):"));
+            panel.add(new JLabel("Release Date (YYYY-MM-DD, leave empty for no date):"));
             panel.add(dateField);
             panel.add(new JLabel("Rating (leave empty to keep unchanged):"));
             panel.add(ratingField);
@@ -173,8 +519,9 @@ public class GUIManager {
             if (result != JOptionPane.OK_OPTION) return;
 
             String newTitle = titleField.getText().isEmpty() ? currentGame.title() : titleField.getText();
-            String newDate = dateField.getText().isEmpty() ? currentGame.releaseDate() : dateField.getText();
-            if (!newDate.equals(currentGame.releaseDate())) {
+            // Поле даты заполнено текущим значением, пустое поле - игра без даты
+            String newDate = dateField.getText().isBlank() ? null : dateField.getText().trim();
+            if (newDate != null && !Objects.equals(newDate, currentGame.releaseDate())) {
                 SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
                 dateFormat.setLenient(false);
                 try {
@@ -184,13 +531,24 @@ public class GUIManager {
                     return;
                 }
             }
-            double newRating = ratingField.getText().isEmpty() ? currentGame.rating() : Double.parseDouble(ratingField.getText());
+            Double newRating = ratingField.getText().isEmpty() ? currentGame.rating() : Double.valueOf(ratingField.getText());
 
-            dbManager.updateGame(id, newTitle, newDate, newRating);
-            JOptionPane.showMessageDialog(null, "Game updated successfully");
-            refreshTable(searchField.getText());
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
+            if (editQueue != null) {
+                try {
+                    editQueue.update(new DatabaseManager.Game(currentGame.id(), newTitle, newDate, newRating),
+                            seenVersion);
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(null, "Error: Cannot queue edit: " + e.getMessage());
+                }
+                return;
+            }
+            runInBackground(() -> {
+                dbManager.updateGame(currentGame.id(), newTitle, newDate, newRating);
+                return null;
+            }, _ -> {
+                JOptionPane.showMessageDialog(null, "Game updated successfully");
+                tableModel.refreshChanges();
+            });
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(null, "Error: Invalid number format");
         }
@@ -201,19 +559,57 @@ public class GUIManager {
             JOptionPane.showMessageDialog(null, "Error: Guests do not have permission to delete games.");
             return;
         }
-        try {
-            String title = JOptionPane.showInputDialog("Title to delete:");
-            if (title == null) return;
-            int rowsDeleted = dbManager.deleteGame(title);
+        String title = JOptionPane.showInputDialog("Title to delete:");
+        if (title == null) return;
+        runInBackground(() -> {
+            flushEdits();
+            return dbManager.deleteGame(title);
+        }, rowsDeleted -> {
             if (rowsDeleted > 0) {
                 JOptionPane.showMessageDialog(null, "Game deleted successfully");
-                refreshTable(searchField.getText());
+                tableModel.refreshChanges();
             } else {
                 JOptionPane.showMessageDialog(null, "No game found with title: " + title);
             }
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
+        });
+    }
+
+    private void deleteSelected() {
+        if (dbManager.getCurrentRole().equals("guest")) {
+            JOptionPane.showMessageDialog(null, "Error: Guests do not have permission to delete games.");
+            return;
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int row : table.getSelectedRows()) {
+            DatabaseManager.Game game = tableModel.getGameAt(table.convertRowIndexToModel(row));
+            if (game != null) ids.add(game.id());
+        }
+        if (ids.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "Select the games to delete first");
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(null, "Delete " + ids.size() + " selected game(s)?",
+                "Confirm Deletion", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        if (editQueue != null) {
+            // Строки таблицы соответствуют ее версии данных
+            String seenVersion = tableModel.getVersion();
+            try {
+                for (int id : ids) {
+                    editQueue.delete(id, seenVersion);
+                }
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, "Error: Cannot queue edit: " + e.getMessage());
+            }
+            return;
         }
+        runInBackground(() -> dbManager.deleteByIds(ids), results -> {
+            long deleted = results.stream()
+                    .filter(r -> r.outcome() == DatabaseManager.WriteOutcome.DELETED).count();
+            JOptionPane.showMessageDialog(null, deleted + " of " + ids.size() + " game(s) deleted");
+            tableModel.refreshChanges();
+        });
     }
 
     private void clearTable() {
@@ -221,13 +617,74 @@ public class GUIManager {
             JOptionPane.showMessageDialog(null, "Error: Guests do not have permission to clear the table.");
             return;
         }
-        try {
+        runInBackground(() -> {
+            flushEdits();
             dbManager.clearTable();
+            return null;
+        }, _ -> {
             JOptionPane.showMessageDialog(null, "Table cleared successfully");
-            refreshTable(searchField.getText());
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
-        }
+            tableModel.refreshChanges();
+        });
+    }
+
+    // Те же данные, что и в MBean DatabaseMonitor: задержки по операциям, пул, кэш и медленные запросы
+    private void showDiagnostics() {
+        JTextArea text = new JTextArea(dbManager.dumpMetrics(), 25, 110);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setEditable(false);
+        JOptionPane.showMessageDialog(null, new JScrollPane(text), "Diagnostics", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    // Сводка по рейтингам и годам выпуска и лучшие по рейтингу игры; все читается из сводных таблиц и индекса
+    private void showStatistics() {
+        runInBackground(() -> new StatisticsView(dbManager.getStatistics(), dbManager.getTopRated(TOP_RATED)),
+                view -> {
+                    DatabaseManager.Statistics stats = view.statistics();
+                    JPanel summary = new JPanel(new GridLayout(0, 2, 10, 4));
+                    summary.add(new JLabel("Games:"));
+                    summary.add(new JLabel(String.format("%,d", stats.games())));
+                    summary.add(new JLabel("Rated:"));
+                    summary.add(new JLabel(String.format("%,d", stats.rated())));
+                    summary.add(new JLabel("Average rating:"));
+                    summary.add(new JLabel(formatRating(stats.averageRating())));
+                    summary.add(new JLabel("Min / max rating:"));
+                    summary.add(new JLabel(formatRating(stats.minRating()) + " / " + formatRating(stats.maxRating())));
+
+                    Object[][] ratingRows = stats.ratingDistribution().entrySet().stream()
+                            .map(e -> new Object[]{e.getKey() + " - " + (e.getKey() + 1), e.getValue()})
+                            .toArray(Object[][]::new);
+                    Object[][] yearRows = stats.gamesPerYear().entrySet().stream()
+                            .map(e -> new Object[]{e.getKey(), e.getValue()})
+                            .toArray(Object[][]::new);
+                    Object[][] topRows = view.topRated().stream()
+                            .map(g -> new Object[]{g.id(), g.title(), g.releaseDate(), g.rating()})
+                            .toArray(Object[][]::new);
+
+                    JTabbedPane tabs = new JTabbedPane();
+                    tabs.addTab("Ratings", readOnlyTable(ratingRows, "Rating", "Games"));
+                    tabs.addTab("Years", readOnlyTable(yearRows, "Year", "Games"));
+                    tabs.addTab("Top " + TOP_RATED, readOnlyTable(topRows, "ID", "Title", "Release Date", "Rating"));
+                    tabs.setPreferredSize(new Dimension(600, 350));
+
+                    JPanel panel = new JPanel(new BorderLayout(0, 10));
+                    panel.add(summary, BorderLayout.NORTH);
+                    panel.add(tabs, BorderLayout.CENTER);
+                    JOptionPane.showMessageDialog(null, panel, "Statistics", JOptionPane.PLAIN_MESSAGE);
+                });
+    }
+
+    private static String formatRating(Double rating) {
+        return rating != null ? String.format("%.2f", rating) : "-";
+    }
+
+    private static JScrollPane readOnlyTable(Object[][] rows, String... columns) {
+        JTable table = new JTable(rows, columns) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        return new JScrollPane(table);
     }
 
     private void createUser() {
@@ -235,21 +692,19 @@ public class GUIManager {
             JOptionPane.showMessageDialog(null, "Error: Guests do not have permission to create users.");
             return;
         }
-        try {
-            String username = JOptionPane.showInputDialog("New username:");
-            if (username == null) return;
+        String username = JOptionPane.showInputDialog("New username:");
+        if (username == null) return;
 
-            String password = JOptionPane.showInputDialog("Password:");
-            if (password == null) return;
+        String password = JOptionPane.showInputDialog("Password:");
+        if (password == null) return;
 
-            String role = JOptionPane.showInputDialog("Role (admin/guest):");
-            if (role == null) return;
+        String role = JOptionPane.showInputDialog("Role (admin/guest):");
+        if (role == null) return;
 
+        runInBackground(() -> {
             dbManager.createUser(username, password, role);
-            JOptionPane.showMessageDialog(null, "User created successfully");
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
-        }
+            return null;
+        }, _ -> JOptionPane.showMessageDialog(null, "User created successfully"));
     }
 
     private void deleteDatabase() {
@@ -260,13 +715,21 @@ public class GUIManager {
         int confirm = JOptionPane.showConfirmDialog(null,
                 "Are you sure? The app will close.", "Confirm Deletion", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            try {
+            tableModel.cancelAll();
+            runInBackground(() -> {
                 dbManager.deleteDatabase(); // Используем фиксированные данные из DatabaseManager
+                return null;
+            }, _ -> {
                 JOptionPane.showMessageDialog(null, "Database deleted. Restart the app.");
                 System.exit(0);
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(null, "Error: " + e.getMessage());
-            }
+            });
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface DbTask<T> {
+        T run() throws SQLException;
+    }
+
+    private record StatisticsView(DatabaseManager.Statistics statistics, List<DatabaseManager.Game> topRated) {}
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Кэш записей games по game_id с вытеснением по размеру (LRU) и по времени жизни
+public class GameCache {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // Растет при каждой инвалидации, чтобы загрузка, начатая до нее, не положила в кэш устаревшую строку
+    private final AtomicLong epoch = new AtomicLong();
+
+    public GameCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() <= GameCache.this.maxSize) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    // Настройки задаются через -Dgames.cache.maxSize и -Dgames.cache.ttlSeconds
+    public static GameCache fromSystemProperties() {
+        return new GameCache(Integer.getInteger("games.cache.maxSize", 10_000),
+                TimeUnit.SECONDS.toMillis(Long.getLong("games.cache.ttlSeconds", 300)));
+    }
+
+    public synchronized DatabaseManager.Game get(int id) {
+        Entry entry = entries.get(id);
+        if (entry != null && System.nanoTime() - entry.loadedAt() > ttlNanos) {
+            entries.remove(id);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.game();
+    }
+
+    public long currentEpoch() {
+        return epoch.get();
+    }
+
+    public synchronized void put(DatabaseManager.Game game, long loadEpoch) {
+        if (maxSize > 0 && loadEpoch == epoch.get()) {
+            entries.put(game.id(), new Entry(game, System.nanoTime()));
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        epoch.incrementAndGet();
+        if (entries.remove(id) != null) evictions.increment();
+    }
+
+    public synchronized void invalidateIf(Predicate<DatabaseManager.Game> predicate) {
+        epoch.incrementAndGet();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (predicate.test(it.next().game())) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        epoch.incrementAndGet();
+        evictions.add(entries.size());
+        entries.clear();
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    private record Entry(DatabaseManager.Game game, long loadedAt) {}
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache: %d entries, %.0f%% hits, %d evictions", size, hitRate() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.example;
+
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+// Потоковая выгрузка games через COPY ... TO STDOUT: данные идут с сервера прямо в поток, минуя построчный JDBC
+public class GameExporter {
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    public enum Format { CSV, BINARY }
+
+    public static long export(Connection conn, Filter filter, Format format, boolean gzip, OutputStream out,
+                              Consumer<Progress> progress) throws SQLException {
+        long start = System.nanoTime();
+        String sql = "COPY " + source(conn, filter) + " TO STDOUT WITH (FORMAT "
+                + (format == Format.CSV ? "csv, HEADER true" : "binary") + ")";
+        try {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+            CountingOutputStream counting = new CountingOutputStream(compressed != null ? compressed : out,
+                    start, progress);
+            long rows = conn.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, counting);
+            if (compressed != null) compressed.finish();
+            counting.flush();
+            counting.report();
+            return rows;
+        } catch (IOException e) {
+            throw new SQLException("Failed to write export data: " + e.getMessage(), e);
+        }
+    }
+
+    // COPY не принимает параметры, поэтому значения фильтра подставляются экранированными литералами.
+    // Название ищется так же, как в GameQuery: символы шаблона LIKE в нем экранируются
+    private static String source(Connection conn, Filter filter) throws SQLException {
+        List<String> conditions = new ArrayList<>();
+        if (filter.title() != null && !filter.title().isEmpty()) {
+            conditions.add("title ILIKE " + literal(conn, "%" + GameQuery.escapeLike(filter.title()) + "%"));
+        }
+        if (filter.titlePrefix() != null && !filter.titlePrefix().isEmpty()) {
+            conditions.add("title ILIKE " + literal(conn, GameQuery.escapeLike(filter.titlePrefix()) + "%"));
+        }
+        if (filter.releasedFrom() != null) conditions.add("release_date >= DATE '" + filter.releasedFrom() + "'");
+        if (filter.releasedTo() != null) conditions.add("release_date <= DATE '" + filter.releasedTo() + "'");
+        if (filter.minRating() != null) conditions.add("rating >= " + number(filter.minRating()));
+        if (filter.maxRating() != null) conditions.add("rating <= " + number(filter.maxRating()));
+        // COPY из секционированной таблицы (миграция V5) возможен только через запрос
+        if (conditions.isEmpty()) return "(SELECT game_id, title, release_date, rating FROM games)";
+        return "(SELECT game_id, title, release_date, rating FROM games WHERE "
+                + String.join(" AND ", conditions) + ")";
+    }
+
+    private static String literal(Connection conn, String value) throws SQLException {
+        boolean standardStrings = conn.unwrap(BaseConnection.class).getStandardConformingStrings();
+        return "'" + Utils.escapeLiteral(null, value, standardStrings) + "'";
+    }
+
+    private static String number(double value) {
+        if (!Double.isFinite(value)) throw new IllegalArgumentException("Rating bound must be finite: " + value);
+        return Double.toString(value);
+    }
+
+    // title - подстрока названия, titlePrefix - его начало; оба ищутся без учета регистра
+    public record Filter(String title, String titlePrefix, LocalDate releasedFrom, LocalDate releasedTo,
+                         Double minRating, Double maxRating) {
+        public static Filter all() {
+            return new Filter(null, null, null, null, null, null);
+        }
+
+        // Те же строки, что показывает таблица или GET /api/games с этим запросом; порядок не важен
+        public static Filter of(GameQuery query) {
+            return new Filter(query.title(), query.titlePrefix(), query.releasedFrom(), query.releasedTo(),
+                    query.minRating(), query.maxRating());
+        }
+    }
+
+    public record Progress(long bytesWritten, long elapsedNanos) {
+        public double megabytesPerSecond() {
+            return elapsedNanos > 0 ? bytesWritten * 1e3 / elapsedNanos : 0;
+        }
+    }
+
+    // Считает несжатые байты, полученные от сервера
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final long start;
+        private final Consumer<Progress> progress;
+        private long bytes;
+        private long lastReport;
+
+        CountingOutputStream(OutputStream out, long start, Consumer<Progress> progress) {
+            super(out);
+            this.start = start;
+            this.progress = progress;
+            this.lastReport = start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+            maybeReport();
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            bytes += length;
+            maybeReport();
+        }
+
+        private void maybeReport() {
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                progress.accept(new Progress(bytes, now - start));
+            }
+        }
+
+        void report() {
+            if (progress != null) progress.accept(new Progress(bytes, System.nanoTime() - start));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.example;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Массовая загрузка CSV через COPY: файл потоком идет во временную таблицу, затем одним запросом сливается в games
+public class GameImporter {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    public enum DuplicatePolicy { SKIP, UPDATE, FAIL }
+
+    // Ожидаемые колонки CSV: game_id,title,release_date,rating
+    public static Result importCsv(Connection conn, InputStream in, boolean header, DuplicatePolicy policy,
+                                   Consumer<Progress> progress) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE games_import ("
+                    + "import_seq BIGSERIAL, game_id INTEGER NOT NULL, title VARCHAR(255) NOT NULL, "
+                    + "release_date DATE, rating DOUBLE PRECISION) ON COMMIT DROP");
+
+            CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+            CountingInputStream counting = new CountingInputStream(in, start, progress);
+            long copied = copyManager.copyIn(
+                    "COPY games_import (game_id, title, release_date, rating) FROM STDIN WITH (FORMAT csv, HEADER "
+                            + header + ")", counting, COPY_BUFFER_SIZE);
+            counting.report();
+            stmt.execute("ANALYZE games_import");
+
+            // У секционированной games нет уникального индекса по game_id для ON CONFLICT (миграция V5):
+            // существующие строки определяются по реестру games_ids, а секции для новых лет создаются заранее
+            boolean partitioned;
+            try (ResultSet rs = stmt.executeQuery("SELECT games_partitioned()")) {
+                rs.next();
+                partitioned = rs.getBoolean(1);
+            }
+            if (partitioned) {
+                stmt.execute("SELECT games_ensure_partitions(array_agg(DISTINCT release_date)) FROM games_import");
+            }
+
+            long inserted;
+            long updated = 0;
+            switch (policy) {
+                case SKIP -> inserted = stmt.executeLargeUpdate(partitioned
+                        ? "INSERT INTO games (game_id, title, release_date, rating) "
+                                + "SELECT DISTINCT ON (game_id) game_id, title, release_date, rating FROM games_import i "
+                                + "WHERE NOT EXISTS (SELECT 1 FROM games_ids g WHERE g.game_id = i.game_id) "
+                                + "ORDER BY game_id, import_seq"
+                        : "INSERT INTO games (game_id, title, release_date, rating) "
+                                + "SELECT DISTINCT ON (game_id) game_id, title, release_date, rating FROM games_import "
+                                + "ORDER BY game_id, import_seq "
+                                + "ON CONFLICT (game_id) DO NOTHING");
+                case UPDATE -> {
+                    try (ResultSet rs = stmt.executeQuery(partitioned
+                            ? "WITH src AS ("
+                                    + "SELECT DISTINCT ON (game_id) game_id, title, release_date, rating FROM games_import "
+                                    + "ORDER BY game_id, import_seq DESC), "
+                                    + "updated AS (UPDATE games g SET title = src.title, "
+                                    + "release_date = src.release_date, rating = src.rating "
+                                    + "FROM src WHERE g.game_id = src.game_id RETURNING g.game_id), "
+                                    + "added AS (INSERT INTO games (game_id, title, release_date, rating) "
+                                    + "SELECT game_id, title, release_date, rating FROM src "
+                                    + "WHERE game_id NOT IN (SELECT game_id FROM updated) RETURNING 1) "
+                                    + "SELECT (SELECT count(*) FROM added), (SELECT count(*) FROM updated)"
+                            : "WITH merged AS ("
+                                    + "INSERT INTO games (game_id, title, release_date, rating) "
+                                    + "SELECT DISTINCT ON (game_id) game_id, title, release_date, rating FROM games_import "
+                                    + "ORDER BY game_id, import_seq DESC "
+                                    + "ON CONFLICT (game_id) DO UPDATE SET title = EXCLUDED.title, "
+                                    + "release_date = EXCLUDED.release_date, rating = EXCLUDED.rating "
+                                    + "RETURNING (xmax = 0) AS inserted) "
+                                    + "SELECT count(*) FILTER (WHERE inserted), count(*) FILTER (WHERE NOT inserted) "
+                                    + "FROM merged")) {
+                        rs.next();
+                        inserted = rs.getLong(1);
+                        updated = rs.getLong(2);
+                    }
+                }
+                default -> inserted = stmt.executeLargeUpdate(
+                        "INSERT INTO games (game_id, title, release_date, rating) "
+                                + "SELECT game_id, title, release_date, rating FROM games_import");
+            }
+            conn.commit();
+            return new Result(copied, inserted, updated, copied - inserted - updated, System.nanoTime() - start);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } catch (IOException e) {
+            conn.rollback();
+            throw new SQLException("Failed to read import data: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    public record Progress(long bytesRead, long rowsRead, long elapsedNanos) {
+        public double rowsPerSecond() {
+            return elapsedNanos > 0 ? rowsRead * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    public record Result(long rowsCopied, long rowsInserted, long rowsUpdated, long rowsSkipped, long elapsedNanos) {
+        public double rowsPerSecond() {
+            return elapsedNanos > 0 ? rowsCopied * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    // Считает байты и строки по мере того, как COPY читает поток, и не чаще раза в 250 мс сообщает о прогрессе
+    private static final class CountingInputStream extends FilterInputStream {
+        private final long start;
+        private final Consumer<Progress> progress;
+        private long bytes;
+        private long lines;
+        private long lastReport;
+
+        CountingInputStream(InputStream in, long start, Consumer<Progress> progress) {
+            super(in);
+            this.start = start;
+            this.progress = progress;
+            this.lastReport = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+                if (b == '\n') lines++;
+                maybeReport();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) count(buffer, offset, n);
+            return n;
+        }
+
+        private void count(byte[] buffer, int offset, int length) {
+            bytes += length;
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') lines++;
+            }
+            maybeReport();
+        }
+
+        private void maybeReport() {
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                lastReport = now;
+                progress.accept(new Progress(bytes, lines, now - start));
+            }
+        }
+
+        void report() {
+            if (progress != null) progress.accept(new Progress(bytes, lines, System.nanoTime() - start));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+// Фильтры и порядок строк для DatabaseManager.queryGames. Значения фильтров и ключа продолжения всегда
+// передаются параметрами, в текст SQL попадают только выражения из Sort.
+// Пустые release_date и rating сортируются как бесконечность (после всех значений при сортировке по возрастанию):
+// так ключ сортировки никогда не равен NULL и совпадает с выражением индекса из миграции V3
+public record GameQuery(String title, String titlePrefix, LocalDate releasedFrom, LocalDate releasedTo,
+                        Double minRating, Double maxRating, Sort sort, boolean descending) {
+
+    public enum Sort {
+        ID("game_id", "integer"),
+        TITLE("title", "varchar"),
+        RELEASE_DATE("coalesce(release_date, 'infinity'::date)", "date"),
+        RATING("coalesce(rating, 'Infinity'::double precision)", "double precision");
+
+        private final String key;
+        private final String type;
+
+        Sort(String key, String type) {
+            this.key = key;
+            this.type = type;
+        }
+    }
+
+    private static final String COLUMNS = "SELECT game_id, title, release_date, rating, ";
+
+    public GameQuery {
+        if (sort == null) sort = Sort.ID;
+        if (title != null && title.isEmpty()) title = null;
+        if (titlePrefix != null && titlePrefix.isEmpty()) titlePrefix = null;
+        requireFinite(minRating);
+        requireFinite(maxRating);
+    }
+
+    public static GameQuery all() {
+        return new GameQuery(null, null, null, null, null, null, Sort.ID, false);
+    }
+
+    public static GameQuery byTitle(String title) {
+        return new GameQuery(title, null, null, null, null, null, Sort.ID, false);
+    }
+
+    public GameQuery sortedBy(Sort sort, boolean descending) {
+        return new GameQuery(title, titlePrefix, releasedFrom, releasedTo, minRating, maxRating, sort, descending);
+    }
+
+    public boolean isFiltered() {
+        return title != null || titlePrefix != null || releasedFrom != null || releasedTo != null
+                || minRating != null || maxRating != null;
+    }
+
+    // Страница: после строки из continuation (null - с начала), пропустив skip строк; читается на одну строку
+    // больше limit, чтобы узнать, есть ли следующая страница
+    String pageSql(String continuation, int skip, int limit, List<Object> params) {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        List<String> conditions = after(continuation, params);
+        params.add(skip);
+        params.add(limit + 1);
+        return COLUMNS + sort.key + " AS sort_key FROM games" + where(conditions) + orderBy() + " OFFSET ? LIMIT ?";
+    }
+
+    // Ключи продолжения через каждые step строк среди первых rows строк после continuation: game_id и ключ
+    // сортировки строк step, 2 * step, ... Читаются только эти два столбца, без названий и дат
+    String anchorSql(String continuation, int rows, int step, List<Object> params) {
+        if (step <= 0) throw new IllegalArgumentException("step must be positive");
+        List<String> conditions = after(continuation, params);
+        params.add(rows);
+        params.add(step);
+        return "SELECT game_id, sort_key FROM (SELECT game_id, " + sort.key + " AS sort_key, row_number() OVER ("
+                + orderBy().substring(1) + ") AS n FROM games" + where(conditions) + orderBy() + " LIMIT ?) t"
+                + " WHERE n % ? = 0 ORDER BY n";
+    }
+
+    private List<String> after(String continuation, List<Object> params) {
+        List<String> conditions = conditions(params);
+        if (continuation != null) {
+            String op = descending ? " < " : " > ";
+            conditions.add(sort == Sort.ID
+                    ? "game_id" + op + "?"
+                    : "(" + sort.key + ", game_id)" + op + "(?::" + sort.type + ", ?)");
+            bindContinuation(continuation, params);
+        }
+        return conditions;
+    }
+
+    private String orderBy() {
+        String direction = descending ? " DESC" : "";
+        return " ORDER BY " + sort.key + direction + (sort == Sort.ID ? "" : ", game_id" + direction);
+    }
+
+    String countSql(long limit, List<Object> params) {
+        String sql = "SELECT count(*) FROM (SELECT 1 FROM games" + where(conditions(params)) + " LIMIT ?) t";
+        params.add(limit);
+        return sql;
+    }
+
+    // Условия записаны через те же выражения, что и индексы: диапазон по дате и рейтингу - условие индекса,
+    // а не фильтр. Верхняя граница "< бесконечность" отсекает строки с пустым значением
+    private List<String> conditions(List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (title != null) {
+            conditions.add("title ILIKE ?");
+            params.add("%" + escapeLike(title) + "%");
+        }
+        if (titlePrefix != null) {
+            conditions.add("title ILIKE ?");
+            params.add(escapeLike(titlePrefix) + "%");
+        }
+        range(conditions, params, Sort.RELEASE_DATE, releasedFrom, releasedTo, "'infinity'::date");
+        // Те же границы по самой release_date: по ним отбрасываются лишние секции games (миграция V5),
+        // условие на выражение с coalesce для этого не годится. Пустые даты отсекаются в обоих видах
+        if (releasedFrom != null) {
+            conditions.add("release_date >= ?");
+            params.add(releasedFrom);
+        }
+        if (releasedTo != null) {
+            conditions.add("release_date <= ?");
+            params.add(releasedTo);
+        }
+        range(conditions, params, Sort.RATING, minRating, maxRating, "'Infinity'::double precision");
+        return conditions;
+    }
+
+    private static void range(List<String> conditions, List<Object> params, Sort sort, Object from, Object to,
+                              String infinity) {
+        if (from != null) {
+            conditions.add(sort.key + " >= ?");
+            params.add(from);
+        }
+        if (to != null) {
+            conditions.add(sort.key + " <= ?");
+            params.add(to);
+        } else if (from != null) {
+            conditions.add(sort.key + " < " + infinity);
+        }
+    }
+
+    private static String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    // Ключ продолжения: порядок, game_id и значение ключа сортировки последней строки страницы
+    String continuation(int lastId, String lastKey) {
+        String raw = sort.name() + ":" + (descending ? "D" : "A") + ":" + lastId + ":" + lastKey;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Ключ от запроса с другим порядком не принимается
+    private void bindContinuation(String token, List<Object> params) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed continuation token");
+        }
+        if (parts.length != 4) throw new IllegalArgumentException("Malformed continuation token");
+        if (!parts[0].equals(sort.name()) || !parts[1].equals(descending ? "D" : "A")) {
+            throw new IllegalArgumentException("Continuation token belongs to a query with a different order");
+        }
+        int id;
+        try {
+            id = Integer.parseInt(parts[2]);
+            if (sort == Sort.RELEASE_DATE && !parts[3].equals("infinity")) LocalDate.parse(parts[3]);
+            if (sort == Sort.RATING) Double.parseDouble(parts[3]);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed continuation token");
+        }
+        if (sort != Sort.ID) params.add(parts[3]);
+        params.add(id);
+    }
+
+    // Проверка условий запроса на стороне клиента - для строк, пришедших из getChangesSince.
+    // ILIKE приближается сравнением в нижнем регистре
+    boolean matches(DatabaseManager.Game game) {
+        String lowerTitle = game.title().toLowerCase(Locale.ROOT);
+        if (title != null && !lowerTitle.contains(title.toLowerCase(Locale.ROOT))) return false;
+        if (titlePrefix != null && !lowerTitle.startsWith(titlePrefix.toLowerCase(Locale.ROOT))) return false;
+        if (releasedFrom != null || releasedTo != null) {
+            if (game.releaseDate() == null) return false;
+            LocalDate date = LocalDate.parse(game.releaseDate());
+            if (releasedFrom != null && date.isBefore(releasedFrom)) return false;
+            if (releasedTo != null && date.isAfter(releasedTo)) return false;
+        }
+        // Как и на сервере, строка без рейтинга не проходит ни одну границу рейтинга
+        if (minRating != null && (game.rating() == null || game.rating() < minRating)) return false;
+        return maxRating == null || game.rating() != null && game.rating() <= maxRating;
+    }
+
+    // Порядок строк как в pageSql, пустые значения - после всех (бесконечность). Названия сравниваются
+    // Collator по умолчанию, а не правилами сортировки БД, поэтому вставленная на месте строка в редких
+    // случаях встает не там, где ее покажет повторное чтение
+    Comparator<DatabaseManager.Game> order() {
+        Comparator<DatabaseManager.Game> key = switch (sort) {
+            case ID -> Comparator.comparingInt(DatabaseManager.Game::id);
+            case TITLE -> Comparator.comparing(DatabaseManager.Game::title, Collator.getInstance());
+            case RELEASE_DATE -> Comparator.comparing(DatabaseManager.Game::releaseDate,
+                    Comparator.nullsLast(Comparator.naturalOrder()));
+            case RATING -> Comparator.comparing(DatabaseManager.Game::rating,
+                    Comparator.nullsLast(Comparator.naturalOrder()));
+        };
+        if (sort != Sort.ID) key = key.thenComparingInt(DatabaseManager.Game::id);
+        return descending ? key.reversed() : key;
+    }
+
+    // Символы шаблона LIKE во введенном тексте ищутся буквально
+    static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static void requireFinite(Double value) {
+        if (value != null && !Double.isFinite(value)) {
+            throw new IllegalArgumentException("Rating bound must be finite: " + value);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Серверный режим без GUI: JSON API поверх DatabaseManager. Все клиенты работают через один пул соединений
+// служебной учетной записи, а пользователи проверяются по своим учетным данным PostgreSQL (HTTP Basic).
+// Права admin/guest проверяются здесь так же, как в GUIManager. Каждый запрос обрабатывается в виртуальном потоке
+public class GameServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger("org.example.server");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_JSON_BODY = 64 * 1024;
+    // Неудачный вход запоминается на -Dgames.server.loginFailureMillis (2000), одновременно идет не больше
+    // -Dgames.server.loginChecks (8) проверок входа; остальные ждут до секунды и получают 503
+    private static final long LOGIN_FAILURE_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("games.server.loginFailureMillis", 2_000));
+    private static final int MAX_FAILED_LOGINS = 10_000;
+
+    private final DatabaseManager dbManager;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Login> logins = new ConcurrentHashMap<>();
+    // Проверки входа, которые идут сейчас: пользователь и хэш пароля -> итог проверки
+    private final Map<String, CompletableFuture<Login>> checking = new ConcurrentHashMap<>();
+    // Пользователь и хэш пароля -> момент, до которого неудачная проверка не повторяется
+    private final Map<String, Long> failedLogins = new ConcurrentHashMap<>();
+    private final Semaphore loginChecks = new Semaphore(Integer.getInteger("games.server.loginChecks", 8));
+    private final long loginTtlNanos;
+    private final byte[] salt = new byte[16];
+
+    public GameServer(DatabaseManager dbManager, InetSocketAddress address, int backlog, long loginTtlMillis)
+            throws IOException {
+        this.dbManager = dbManager;
+        this.loginTtlNanos = TimeUnit.MILLISECONDS.toNanos(loginTtlMillis);
+        new SecureRandom().nextBytes(salt);
+        this.server = HttpServer.create(address, backlog);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    // Запуск: java -Dgames.server.user=... -Dgames.server.password=... -jar app.jar --server
+    // Служебная учетная запись должна входить в admin_role, иначе запись будет недоступна всем клиентам
+    public static void launch() {
+        String user = System.getProperty("games.server.user");
+        String password = System.getProperty("games.server.password");
+        if (user == null || password == null) {
+            System.err.println("Set -Dgames.server.user and -Dgames.server.password for the service account");
+            System.exit(1);
+        }
+        DatabaseManager dbManager = new DatabaseManager();
+        try {
+            dbManager.connect(user, password);
+            GameServer gameServer = new GameServer(dbManager,
+                    new InetSocketAddress(Integer.getInteger("games.server.port", 8080)),
+                    Integer.getInteger("games.server.backlog", 4096),
+                    TimeUnit.SECONDS.toMillis(Long.getLong("games.server.loginCacheSeconds", 300)));
+            Runtime.getRuntime().addShutdownHook(new Thread(gameServer::close));
+            gameServer.start();
+            if (!"admin".equals(dbManager.getCurrentRole())) {
+                LOG.warning("Service account '" + user + "' is not an admin: write requests will fail");
+            }
+            LOG.info("Listening on " + gameServer.server.getAddress());
+        } catch (SQLException | IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+        try {
+            dbManager.close();
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Error closing connection pool", e);
+        }
+    }
+
+    // IOException выходит из обработчика без закрытия exchange: сервер рвет соединение, и клиент видит
+    // незавершенный ответ, а не обрезанный, но формально успешный
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Login login = authenticate(exchange);
+            if (login == null) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"games\", charset=\"UTF-8\"");
+                sendJson(exchange, 401, Json.error("Authentication required"));
+            } else if (login.role() == null) {
+                sendJson(exchange, 403, Json.error("User is not a member of admin_role or guest_role"));
+            } else {
+                // Свои записи пользователь сразу видит и при чтении с реплик
+                dbManager.bindSession(login.session());
+                try {
+                    route(exchange, login.role());
+                } finally {
+                    dbManager.bindSession(null);
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            sendJson(exchange, 400, Json.error(e.getMessage()));
+        } catch (SecurityException e) {
+            sendJson(exchange, 403, Json.error(e.getMessage()));
+        } catch (SQLTimeoutException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJson(exchange, 503, Json.error("Server is busy, try again later"));
+        } catch (SQLException e) {
+            String state = String.valueOf(e.getSQLState());
+            int status = switch (state) {
+                case "23505" -> 409;
+                case "42501" -> 403;
+                case "22001", "22007", "22008", "23502", "23514" -> 400;
+                default -> state.startsWith("08") ? 503 : 500; // 08xxx - нет связи с PostgreSQL
+            };
+            if (status == 500) LOG.log(Level.WARNING, "Request failed: " + exchange.getRequestURI(), e);
+            sendJson(exchange, status, Json.error(e.getMessage()));
+        }
+        exchange.close();
+    }
+
+    private void route(HttpExchange exchange, String role) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals("/api/games")) {
+            switch (method) {
+                case "GET" -> searchGames(exchange, query);
+                case "POST" -> {
+                    requireAdmin(role, "add games");
+                    addGame(exchange);
+                }
+                case "DELETE" -> {
+                    requireAdmin(role, "delete games");
+                    String title = query.get("title");
+                    if (title == null) throw new IllegalArgumentException("Missing parameter: title");
+                    sendJson(exchange, 200, "{\"deleted\":" + dbManager.deleteGame(title) + "}");
+                }
+                default -> methodNotAllowed(exchange);
+            }
+        } else if (path.startsWith("/api/games/")) {
+            int id = parseInt(path.substring("/api/games/".length()), "id");
+            switch (method) {
+                case "GET" -> {
+                    DatabaseManager.Game game = dbManager.getGameById(id);
+                    if (game == null) {
+                        sendJson(exchange, 404, Json.error("Game with ID " + id + " not found"));
+                    } else {
+                        sendJson(exchange, 200, Json.game(game));
+                    }
+                }
+                case "PUT" -> {
+                    requireAdmin(role, "update games");
+                    updateGame(exchange, id);
+                }
+                case "DELETE" -> {
+                    requireAdmin(role, "delete games");
+                    boolean deleted = dbManager.deleteByIds(List.of(id)).getFirst().outcome()
+                            == DatabaseManager.WriteOutcome.DELETED;
+                    sendJson(exchange, deleted ? 200 : 404, deleted
+                            ? "{\"deleted\":1}" : Json.error("Game with ID " + id + " not found"));
+                }
+                default -> methodNotAllowed(exchange);
+            }
+        } else if (path.equals("/api/import")) {
+            if (!method.equals("POST")) {
+                methodNotAllowed(exchange);
+                return;
+            }
+            requireAdmin(role, "import games");
+            importCsv(exchange, query);
+        } else if (path.equals("/api/export")) {
+            if (!method.equals("GET")) {
+                methodNotAllowed(exchange);
+                return;
+            }
+            exportGames(exchange, query);
+        } else if (path.equals("/api/metrics")) {
+            requireAdmin(role, "view metrics");
+            send(exchange, 200, "text/plain; charset=utf-8", dbManager.dumpMetrics());
+        } else {
+            sendJson(exchange, 404, Json.error("Not found"));
+        }
+    }
+
+    // Страница по ключу: ?title=&prefix=&from=&to=&minRating=&maxRating=&sort=id|title|release_date|rating
+    // &order=asc|desc&limit=&next=<ключ из предыдущего ответа>; fuzzy=true - лучшие совпадения по названию
+    private void searchGames(HttpExchange exchange, Map<String, String> query) throws IOException, SQLException {
+        String title = query.getOrDefault("title", "");
+        int limit = Math.min(query.containsKey("limit") ? parseInt(query.get("limit"), "limit") : DEFAULT_PAGE_SIZE,
+                MAX_PAGE_SIZE);
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        if (Boolean.parseBoolean(query.get("fuzzy")) && !title.isBlank()) {
+            List<DatabaseManager.Game> games = new ArrayList<>();
+            dbManager.searchGamesSimilar(title, limit, games::add);
+            sendJson(exchange, 200, "{\"games\":" + Json.games(games) + "}");
+            return;
+        }
+        GameQuery gameQuery = gameQuery(query);
+        DatabaseManager.GamePage page = dbManager.queryGames(gameQuery, query.get("next"), limit, null);
+        String next = page.next() != null ? Json.quote(page.next()) : "null";
+        sendJson(exchange, 200, "{\"games\":" + Json.games(page.games()) + ",\"next\":" + next + "}");
+    }
+
+    private void addGame(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, Object> body = readJson(exchange);
+        int id = requiredNumber(body, "id").intValue();
+        DatabaseManager.Game game = gameFrom(body, id);
+        dbManager.addGame(game.id(), game.title(), game.releaseDate(), game.rating());
+        sendJson(exchange, 201, Json.game(game));
+    }
+
+    private void updateGame(HttpExchange exchange, int id) throws IOException, SQLException {
+        DatabaseManager.Game game = gameFrom(readJson(exchange), id);
+        DatabaseManager.RowResult result = dbManager.updateGames(List.of(game)).getFirst();
+        if (result.outcome() == DatabaseManager.WriteOutcome.NOT_FOUND) {
+            sendJson(exchange, 404, Json.error("Game with ID " + id + " not found"));
+        } else {
+            sendJson(exchange, 200, Json.game(game));
+        }
+    }
+
+    // Тело запроса - CSV (game_id,title,release_date,rating); ?header=true&policy=skip|update|fail
+    private void importCsv(HttpExchange exchange, Map<String, String> query) throws IOException, SQLException {
+        boolean header = Boolean.parseBoolean(query.getOrDefault("header", "true"));
+        GameImporter.DuplicatePolicy policy = GameImporter.DuplicatePolicy.valueOf(
+                query.getOrDefault("policy", "skip").toUpperCase(Locale.ROOT));
+        GameImporter.Result result;
+        try (InputStream in = exchange.getRequestBody()) {
+            result = dbManager.importCsv(in, header, policy, null);
+        }
+        sendJson(exchange, 200, String.format(Locale.ROOT,
+                "{\"rowsCopied\":%d,\"rowsInserted\":%d,\"rowsUpdated\":%d,\"rowsSkipped\":%d,\"elapsedMillis\":%d}",
+                result.rowsCopied(), result.rowsInserted(), result.rowsUpdated(), result.rowsSkipped(),
+                TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos())));
+    }
+
+    private static GameQuery gameQuery(Map<String, String> query) {
+        return new GameQuery(query.get("title"), query.get("prefix"),
+                parseDate(query.get("from")), parseDate(query.get("to")),
+                parseDouble(query.get("minRating"), "minRating"), parseDouble(query.get("maxRating"), "maxRating"),
+                parseSort(query.getOrDefault("sort", "id")), parseDescending(query.getOrDefault("order", "asc")));
+    }
+
+    // ?format=csv|binary&gzip=true и те же фильтры, что у GET /api/games; данные идут клиенту по мере выгрузки,
+    // поэтому ошибка после отправки заголовков обрывает соединение вместо ответа с кодом ошибки
+    private void exportGames(HttpExchange exchange, Map<String, String> query) throws IOException, SQLException {
+        GameExporter.Format format = GameExporter.Format.valueOf(
+                query.getOrDefault("format", "csv").toUpperCase(Locale.ROOT));
+        boolean gzip = Boolean.parseBoolean(query.get("gzip"));
+        GameExporter.Filter filter = GameExporter.Filter.of(gameQuery(query));
+        String extension = (format == GameExporter.Format.CSV ? "csv" : "bin") + (gzip ? ".gz" : "");
+        exchange.getResponseHeaders().set("Content-Type", gzip ? "application/gzip"
+                : format == GameExporter.Format.CSV ? "text/csv; charset=utf-8" : "application/octet-stream");
+        exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"games." + extension + "\"");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            dbManager.exportGames(out, filter, format, gzip, null);
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Export aborted", e);
+            throw new IOException("Export aborted: " + e.getMessage(), e);
+        }
+        out.close();
+    }
+
+    // null - учетные данные не подошли. Успешный вход запоминается по хэшу пароля на loginTtl, чтобы не открывать
+    // соединение с PostgreSQL на каждый запрос; так же запоминается и вход без роли (role = null, ответ 403).
+    // Одновременные запросы с одними учетными данными ждут одну проверку, а не открывают по соединению каждый.
+    // Неверные учетные данные тоже запоминаются ненадолго, а число одновременных проверок ограничено: подбор
+    // паролей не может занять все соединения основного сервера
+    private Login authenticate(HttpExchange exchange) throws SQLException {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) return null;
+        String decoded;
+        try {
+            decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int colon = decoded.indexOf(':');
+        if (colon <= 0) return null;
+        String username = decoded.substring(0, colon);
+        byte[] hash = hash(decoded.substring(colon + 1));
+
+        Login login = logins.get(username);
+        if (login != null && System.nanoTime() < login.expiresAt() && MessageDigest.isEqual(login.passwordHash(), hash)) {
+            return login;
+        }
+        String key = username + ":" + Base64.getEncoder().encodeToString(hash);
+        Long failedUntil = failedLogins.get(key);
+        if (failedUntil != null) {
+            if (System.nanoTime() < failedUntil) return null;
+            failedLogins.remove(key, failedUntil);
+        }
+        CompletableFuture<Login> check = new CompletableFuture<>();
+        CompletableFuture<Login> running = checking.putIfAbsent(key, check);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SQLException cause) throw cause;
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            Login checked = check(key, username, decoded.substring(colon + 1), hash);
+            check.complete(checked);
+            return checked;
+        } catch (SQLException | RuntimeException e) {
+            check.completeExceptionally(e);
+            throw e;
+        } finally {
+            checking.remove(key, check);
+        }
+    }
+
+    private Login check(String key, String username, String password, byte[] hash) throws SQLException {
+        try {
+            if (!loginChecks.tryAcquire(1, TimeUnit.SECONDS)) {
+                throw new SQLTimeoutException("Too many concurrent login checks");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTimeoutException("Interrupted while waiting for a login check");
+        }
+        try {
+            String role = dbManager.authenticate(username, password);
+            // Сессия переживает смену пароля и повторный вход
+            return logins.compute(username, (_, cached) -> new Login(hash, role, System.nanoTime() + loginTtlNanos,
+                    cached != null ? cached.session() : new DatabaseManager.Session()));
+        } catch (SQLException e) {
+            // 28P01 - неверный пароль, 28000 - пользователь не существует или вход запрещен
+            if ("28P01".equals(e.getSQLState()) || "28000".equals(e.getSQLState())) {
+                rememberFailure(key);
+                // Запомненный вход с другим паролем остается; с этим же паролем он больше не действует
+                logins.computeIfPresent(username,
+                        (_, cached) -> MessageDigest.isEqual(cached.passwordHash(), hash) ? null : cached);
+                return null;
+            }
+            throw e;
+        } finally {
+            loginChecks.release();
+        }
+    }
+
+    private void rememberFailure(String key) {
+        long now = System.nanoTime();
+        if (failedLogins.size() >= MAX_FAILED_LOGINS) {
+            failedLogins.values().removeIf(until -> until <= now);
+        }
+        if (failedLogins.size() < MAX_FAILED_LOGINS) failedLogins.put(key, now + LOGIN_FAILURE_NANOS);
+    }
+
+    private byte[] hash(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void requireAdmin(String role, String action) {
+        if (!"admin".equals(role)) throw new SecurityException("Guests do not have permission to " + action);
+    }
+
+    // releaseDate и rating можно не передавать или передать null: у игры их нет
+    private static DatabaseManager.Game gameFrom(Map<String, Object> body, int id) {
+        Object title = body.get("title");
+        if (!(title instanceof String titleText) || titleText.isBlank()) {
+            throw new IllegalArgumentException("Missing field: title");
+        }
+        Object releaseDate = body.get("releaseDate");
+        if (releaseDate != null && !(releaseDate instanceof String)) {
+            throw new IllegalArgumentException("Invalid releaseDate: " + releaseDate);
+        }
+        Object rating = body.get("rating");
+        if (rating != null && !(rating instanceof Double)) throw new IllegalArgumentException("Invalid rating: " + rating);
+        return new DatabaseManager.Game(id, titleText,
+                releaseDate != null ? LocalDate.parse((String) releaseDate).toString() : null, (Double) rating);
+    }
+
+    private static Double requiredNumber(Map<String, Object> body, String field) {
+        if (!(body.get(field) instanceof Double value)) throw new IllegalArgumentException("Missing field: " + field);
+        return value;
+    }
+
+    private static Map<String, Object> readJson(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_JSON_BODY + 1);
+            if (body.length > MAX_JSON_BODY) throw new IllegalArgumentException("Request body is too large");
+            return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value == null || value.isEmpty() ? null : LocalDate.parse(value);
+    }
+
+    private static Double parseDouble(String value, String name) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static GameQuery.Sort parseSort(String value) {
+        try {
+            return GameQuery.Sort.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid sort: " + value);
+        }
+    }
+
+    private static boolean parseDescending(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "asc" -> false;
+            case "desc" -> true;
+            default -> throw new IllegalArgumentException("Invalid order: " + value);
+        };
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange) throws IOException {
+        sendJson(exchange, 405, Json.error("Method not allowed"));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", json);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // role - admin, guest или null (нет доступа); session - сеанс чтения своих записей, общий для всех запросов
+    private record Login(byte[] passwordHash, String role, long expiresAt, DatabaseManager.Session session) {}
+}
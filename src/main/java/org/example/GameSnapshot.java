@@ -0,0 +1,589 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+// Локальная копия games для чтения без сервера. В файле столбцы game_id, дат выпуска и рейтингов лежат
+// массивами примитивов, названия - в общей куче байтов UTF-8, рядом хранится триграммный индекс названий.
+// Файл отображается в память через FileChannel.map: открытие не читает его целиком, страницы подгружает ОС.
+// Путь снимка - маленький файл-указатель с именем файла данных рядом с ним; файлы данных не перезаписываются:
+// новый пишется под новым именем, а указатель переключается переименованием.
+// Строки файла упорядочены по game_id, номер строки - ее позиция в этом порядке. Изменения с сервера файл
+// не переписывают: они копятся в памяти поверх него (overlay) и попадают в новый файл, только когда их
+// становится больше -Dgames.snapshot.compactRows (10 000). Снимок неизменяем и читается из любых потоков;
+// refresh возвращает новый снимок. Размер файла ограничен 2 ГБ
+public final class GameSnapshot {
+    private static final int MAGIC = 0x47534E50; // "GSNP"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    // Пустой рейтинг в столбце рейтингов
+    private static final double NO_RATING = Double.NaN;
+    // Название дополняется двумя такими символами: с каждой его позиции начинается триграмма,
+    // поэтому поиск одного-двух символов сводится к диапазону ключей индекса
+    private static final char PAD = '\0';
+    // При большем числе изменений снимок выгружается заново
+    private static final int MAX_DELTA = 100_000;
+    // Столько значений читается за раз при проверке файла
+    private static final int CHUNK = 8192;
+    private static final int COMPACT_ROWS = Integer.getInteger("games.snapshot.compactRows", 10_000);
+
+    private final Path path;
+    // Версия файла, к которой применены изменения из overlay
+    private final String version;
+    // Строки файла
+    private final int rows;
+    private final DoubleBuffer ratings;
+    private final LongBuffer gramKeys;
+    private final IntBuffer ids;
+    private final IntBuffer dates;
+    private final IntBuffer titleOffsets;
+    private final IntBuffer gramOffsets;
+    private final IntBuffer postings;
+    private final ByteBuffer heap;
+    // Изменения после версии файла: игра по game_id, null - удалена
+    private final TreeMap<Integer, DatabaseManager.Game> overlay;
+    // Существующие игры из overlay по возрастанию game_id, их номера строк - rows + позиция
+    private final DatabaseManager.Game[] added;
+    // Строки файла, которые заменены или удалены через overlay
+    private final BitSet hidden;
+    private final int size;
+
+    private GameSnapshot(Path path, ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a game snapshot: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT) {
+            throw new IOException("Unsupported snapshot format " + buffer.getInt(4) + ": " + path);
+        }
+        this.path = path;
+        rows = buffer.getInt(8);
+        int grams = buffer.getInt(12);
+        int postingCount = buffer.getInt(16);
+        int heapBytes = buffer.getInt(20);
+        int versionBytes = buffer.getInt(24);
+        if (rows < 0 || grams < 0 || postingCount < 0 || heapBytes < 0 || versionBytes < 0
+                || versionBytes > buffer.capacity() - HEADER_BYTES) {
+            throw new IOException("Corrupted snapshot: " + path);
+        }
+        int offset = align(HEADER_BYTES + versionBytes);
+        long expected = offset + 8L * rows + 8L * grams + 4L * rows * 2 + 4L * (rows + 1L) + 4L * (grams + 1L)
+                + 4L * postingCount + heapBytes;
+        if (expected != buffer.capacity()) throw new IOException("Corrupted snapshot: " + path);
+        byte[] versionText = new byte[versionBytes];
+        buffer.get(HEADER_BYTES, versionText);
+        version = new String(versionText, StandardCharsets.UTF_8);
+        // Сначала 8-байтовые столбцы, чтобы все столбцы оставались выровненными
+        ratings = buffer.slice(offset, 8 * rows).asDoubleBuffer();
+        offset += 8 * rows;
+        gramKeys = buffer.slice(offset, 8 * grams).asLongBuffer();
+        offset += 8 * grams;
+        ids = buffer.slice(offset, 4 * rows).asIntBuffer();
+        offset += 4 * rows;
+        dates = buffer.slice(offset, 4 * rows).asIntBuffer();
+        offset += 4 * rows;
+        titleOffsets = buffer.slice(offset, 4 * (rows + 1)).asIntBuffer();
+        offset += 4 * (rows + 1);
+        gramOffsets = buffer.slice(offset, 4 * (grams + 1)).asIntBuffer();
+        offset += 4 * (grams + 1);
+        postings = buffer.slice(offset, 4 * postingCount).asIntBuffer();
+        offset += 4 * postingCount;
+        heap = buffer.slice(offset, heapBytes);
+        if (!ascending(ids, true) || !validOffsets(titleOffsets, heapBytes) || !validOffsets(gramOffsets, postingCount)
+                || !validKeys() || !validPostings()) {
+            throw new IOException("Corrupted snapshot: " + path);
+        }
+        overlay = new TreeMap<>();
+        added = new DatabaseManager.Game[0];
+        hidden = new BitSet();
+        size = rows;
+    }
+
+    // Тот же файл с другим набором изменений поверх него
+    private GameSnapshot(GameSnapshot base, String version, TreeMap<Integer, DatabaseManager.Game> overlay) {
+        path = base.path;
+        this.version = version;
+        rows = base.rows;
+        ratings = base.ratings;
+        gramKeys = base.gramKeys;
+        ids = base.ids;
+        dates = base.dates;
+        titleOffsets = base.titleOffsets;
+        gramOffsets = base.gramOffsets;
+        postings = base.postings;
+        heap = base.heap;
+        this.overlay = overlay;
+        added = overlay.values().stream().filter(game -> game != null).toArray(DatabaseManager.Game[]::new);
+        hidden = new BitSet(rows);
+        for (int id : overlay.keySet()) {
+            int row = rowOf(id);
+            if (row >= 0) hidden.set(row);
+        }
+        size = rows - hidden.cardinality() + added.length;
+    }
+
+    // Проверки при открытии: поиск и чтение строк полагаются на упорядоченность и границы массивов,
+    // поэтому поврежденный файл отвергается сразу, а не дает исключения или неверные строки при поиске.
+    // Массивы читаются блоками; названия, даты и рейтинги не читаются
+
+    private static boolean validOffsets(IntBuffer offsets, int end) {
+        return offsets.get(0) == 0 && offsets.get(offsets.limit() - 1) == end && ascending(offsets, false);
+    }
+
+    private static boolean ascending(IntBuffer buffer, boolean strict) {
+        int[] chunk = new int[CHUNK];
+        long previous = Long.MIN_VALUE;
+        for (int from = 0; from < buffer.limit(); from += CHUNK) {
+            int count = Math.min(CHUNK, buffer.limit() - from);
+            buffer.get(from, chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (chunk[i] < previous || strict && chunk[i] == previous) return false;
+                previous = chunk[i];
+            }
+        }
+        return true;
+    }
+
+    private boolean validKeys() {
+        long[] chunk = new long[CHUNK];
+        for (int from = 0; from < gramKeys.limit(); from += CHUNK) {
+            int count = Math.min(CHUNK, gramKeys.limit() - from);
+            gramKeys.get(from, chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (from + i > 0 && chunk[i] <= (i > 0 ? chunk[i - 1] : gramKeys.get(from - 1))) return false;
+            }
+        }
+        return true;
+    }
+
+    // Список каждой триграммы - строго возрастающие номера строк файла; gramOffsets уже проверены
+    private boolean validPostings() {
+        int[] chunk = new int[CHUNK];
+        int gram = -1;
+        int end = 0;
+        int previous = -1;
+        for (int from = 0; from < postings.limit(); from += CHUNK) {
+            int count = Math.min(CHUNK, postings.limit() - from);
+            postings.get(from, chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                while (from + i >= end) {
+                    end = gramOffsets.get(++gram + 1);
+                    previous = -1;
+                }
+                if (chunk[i] <= previous || chunk[i] >= rows) return false;
+                previous = chunk[i];
+            }
+        }
+        return true;
+    }
+
+    public static GameSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(dataFile(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Snapshot is larger than 2 GB: " + path);
+            // Отображение остается действительным и после закрытия канала
+            return new GameSnapshot(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static Path dataFile(Path path) throws IOException {
+        if (Files.size(path) > 1024) throw new IOException("Not a game snapshot: " + path);
+        String name = Files.readString(path, StandardCharsets.UTF_8).trim();
+        if (!name.startsWith(path.getFileName() + ".") || !name.endsWith(".data") || name.contains("/")
+                || name.contains("\\")) {
+            throw new IOException("Not a game snapshot: " + path);
+        }
+        return path.resolveSibling(name);
+    }
+
+    // Полная выгрузка games в файл path одним снимком сервера conn
+    public static GameSnapshot create(Path path, Connection conn) throws IOException, SQLException {
+        Writer writer = new Writer();
+        String version = DatabaseManager.readAllGames(conn, writer::add);
+        writer.write(path, version);
+        return open(path);
+    }
+
+    // Снимок из games, упорядоченных по game_id, с версией version
+    static GameSnapshot write(Path path, String version, List<DatabaseManager.Game> games) throws IOException {
+        Writer writer = new Writer();
+        games.forEach(writer::add);
+        writer.write(path, version);
+        return open(path);
+    }
+
+    // Читает изменения после версии снимка и возвращает новый снимок, а если изменений нет - этот же.
+    // С сервера читаются только изменившиеся строки; файл переписывается, только когда overlay разрастается.
+    // После очистки таблицы, архивирования секций или слишком большого числа изменений снимок выгружается заново.
+    // conn может вести на реплику: версия и изменения читаются на ней одним снимком, а отставшая реплика
+    // вернет более раннюю версию, после которой недостающие изменения придут при следующем обновлении
+    public GameSnapshot refresh(Connection conn) throws IOException, SQLException {
+        DatabaseManager.Changes changes = DatabaseManager.readChanges(conn, version, MAX_DELTA, null);
+        if (changes.reset()) return create(path, conn);
+        GameSnapshot updated = apply(changes);
+        return updated.overlay.size() > COMPACT_ROWS ? updated.compact() : updated;
+    }
+
+    // Новый снимок с изменениями поверх этого; файл не меняется. id, удаленный и добавленный заново,
+    // приходит в обоих списках: строка существует
+    GameSnapshot apply(DatabaseManager.Changes changes) {
+        if (changes.upserted().isEmpty() && changes.deleted().isEmpty()) return this;
+        TreeMap<Integer, DatabaseManager.Game> merged = new TreeMap<>(overlay);
+        for (int id : changes.deleted()) {
+            if (rowOf(id) >= 0) {
+                merged.put(id, null);
+            } else {
+                merged.remove(id);
+            }
+        }
+        for (DatabaseManager.Game game : changes.upserted()) {
+            merged.put(game.id(), game);
+        }
+        return new GameSnapshot(this, changes.version(), merged);
+    }
+
+    // Переписывает файл со всеми изменениями и открывает его
+    GameSnapshot compact() throws IOException {
+        Writer writer = new Writer();
+        for (int row : search("")) {
+            writer.add(get(row));
+        }
+        writer.write(path, version);
+        return open(path);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    // Версия данных сервера (pg_snapshot), которой соответствует снимок
+    public String version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public DatabaseManager.Game get(int row) {
+        if (row >= rows) return added[row - rows];
+        int date = dates.get(row);
+        return new DatabaseManager.Game(ids.get(row), title(row),
+                date != NO_DATE ? LocalDate.ofEpochDay(date).toString() : null, rating(row));
+    }
+
+    private Double rating(int row) {
+        double rating = ratings.get(row);
+        return Double.isNaN(rating) ? null : rating;
+    }
+
+    public DatabaseManager.Game getById(int id) {
+        if (overlay.containsKey(id)) return overlay.get(id);
+        int row = rowOf(id);
+        return row >= 0 ? get(row) : null;
+    }
+
+    // Строка файла с этим game_id или -1
+    private int rowOf(int id) {
+        int low = 0;
+        int high = rows - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = ids.get(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Номера строк, в названии которых text встречается без учета регистра (как title ILIKE '%text%'),
+    // по возрастанию game_id. Строки файла ищутся по индексу, игры из overlay - перебором
+    public int[] search(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        int[] found = searchFile(needle);
+        if (overlay.isEmpty()) return found;
+        int[] result = new int[found.length + added.length];
+        int count = 0;
+        int i = 0;
+        for (int a = 0; a < added.length; a++) {
+            int id = added[a].id();
+            for (; i < found.length && ids.get(found[i]) < id; i++) {
+                if (!hidden.get(found[i])) result[count++] = found[i];
+            }
+            if (matches(added[a].title(), needle)) result[count++] = rows + a;
+        }
+        for (; i < found.length; i++) {
+            if (!hidden.get(found[i])) result[count++] = found[i];
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean matches(String title, String needle) {
+        return needle.indexOf(PAD) < 0 && title.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    // Кандидаты - пересечение списков строк для всех триграмм needle, начиная с самого короткого;
+    // для needle длиннее трех символов совпадение проверяется по самому названию
+    private int[] searchFile(String needle) {
+        if (needle.isEmpty()) return IntStream.range(0, rows).toArray();
+        if (needle.indexOf(PAD) >= 0) return new int[0];
+        if (needle.length() < 3) return withPrefix(needle);
+
+        int[] grams = new int[needle.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = findGram(key(needle.charAt(i), needle.charAt(i + 1), needle.charAt(i + 2)));
+            if (grams[i] < 0) return new int[0];
+        }
+        Integer[] bySize = IntStream.of(grams).boxed().toArray(Integer[]::new);
+        Arrays.sort(bySize, Comparator.comparingInt(gram -> gramOffsets.get(gram + 1) - gramOffsets.get(gram)));
+        int[] candidates = postings(bySize[0]);
+        for (int i = 1; i < bySize.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, bySize[i]);
+        }
+        if (needle.length() == 3) return candidates;
+        int found = 0;
+        for (int row : candidates) {
+            if (title(row).toLowerCase(Locale.ROOT).contains(needle)) candidates[found++] = row;
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    // Один-два символа: объединение списков всех триграмм, которые с них начинаются
+    private int[] withPrefix(String needle) {
+        char first = needle.charAt(0);
+        long low = needle.length() == 1 ? key(first, 0, 0) : key(first, needle.charAt(1), 0);
+        long high = needle.length() == 1 ? key(first, 0xFFFF, 0xFFFF) : key(first, needle.charAt(1), 0xFFFF);
+        BitSet found = new BitSet(rows);
+        for (int gram = lowerBound(low), end = lowerBound(high + 1); gram < end; gram++) {
+            for (int p = gramOffsets.get(gram), last = gramOffsets.get(gram + 1); p < last; p++) {
+                found.set(postings.get(p));
+            }
+        }
+        return found.stream().toArray();
+    }
+
+    private int[] postings(int gram) {
+        int from = gramOffsets.get(gram);
+        int[] result = new int[gramOffsets.get(gram + 1) - from];
+        postings.get(from, result);
+        return result;
+    }
+
+    // Оба списка упорядочены по номеру строки
+    private int[] intersect(int[] candidates, int gram) {
+        int p = gramOffsets.get(gram);
+        int end = gramOffsets.get(gram + 1);
+        int found = 0;
+        for (int i = 0; i < candidates.length && p < end; ) {
+            int row = postings.get(p);
+            if (row < candidates[i]) {
+                p++;
+            } else if (row > candidates[i]) {
+                i++;
+            } else {
+                candidates[found++] = row;
+                i++;
+                p++;
+            }
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    private int findGram(long key) {
+        int gram = lowerBound(key);
+        return gram < gramKeys.limit() && gramKeys.get(gram) == key ? gram : -1;
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = gramKeys.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (gramKeys.get(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private String title(int row) {
+        int start = titleOffsets.get(row);
+        byte[] bytes = new byte[titleOffsets.get(row + 1) - start];
+        heap.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long key(int a, int b, int c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    // Собирает столбцы и индекс в памяти; строки добавляются по возрастанию game_id
+    private static final class Writer {
+        private int rows;
+        private int[] ids = new int[1024];
+        private int[] dates = new int[1024];
+        private double[] ratings = new double[1024];
+        private int[] titleOffsets = new int[1025];
+        private final ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        private final Map<Long, Postings> grams = new HashMap<>();
+
+        void add(DatabaseManager.Game game) {
+            if (rows > 0 && game.id() <= ids[rows - 1]) {
+                throw new IllegalArgumentException("Games must be added in increasing game_id order");
+            }
+            if (rows == ids.length) {
+                ids = Arrays.copyOf(ids, rows * 2);
+                dates = Arrays.copyOf(dates, rows * 2);
+                ratings = Arrays.copyOf(ratings, rows * 2);
+                titleOffsets = Arrays.copyOf(titleOffsets, rows * 2 + 1);
+            }
+            ids[rows] = game.id();
+            dates[rows] = game.releaseDate() != null ? (int) LocalDate.parse(game.releaseDate()).toEpochDay() : NO_DATE;
+            ratings[rows] = game.rating() != null ? game.rating() : NO_RATING;
+            heap.writeBytes(game.title().getBytes(StandardCharsets.UTF_8));
+            titleOffsets[rows + 1] = heap.size();
+            String padded = game.title().toLowerCase(Locale.ROOT) + PAD + PAD;
+            for (int i = 0; i + 2 < padded.length(); i++) {
+                grams.computeIfAbsent(key(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)),
+                        _ -> new Postings()).add(rows);
+            }
+            rows++;
+        }
+
+        // Данные пишутся в новый файл рядом с указателем, после чего указатель переключается на него
+        // переименованием: уже открытые снимки продолжают читать прежний файл, а сбой записи не портит его.
+        // Отображенный файл нельзя заменить или удалить на Windows, поэтому старые файлы удаляются
+        // без ошибки, а занятые - при следующей записи
+        void write(Path path, String version) throws IOException {
+            long[] keys = grams.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long postingCount = grams.values().stream().mapToLong(postings -> postings.size).sum();
+            byte[] versionText = version.getBytes(StandardCharsets.UTF_8);
+            int offset = align(HEADER_BYTES + versionText.length);
+            long size = offset + 8L * rows + 8L * keys.length + 4L * rows * 2 + 4L * (rows + 1)
+                    + 4L * (keys.length + 1) + 4L * postingCount + heap.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot would be larger than 2 GB: " + size);
+
+            Path dir = path.toAbsolutePath().getParent();
+            String prefix = path.getFileName() + ".";
+            Path data = Files.createTempFile(dir, prefix, ".data");
+            try {
+                writeData(data, keys, (int) postingCount, versionText, offset);
+                try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                Path pointer = Files.createTempFile(dir, prefix, ".tmp");
+                try {
+                    Files.writeString(pointer, data.getFileName().toString(), StandardCharsets.UTF_8);
+                    Files.move(pointer, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(pointer);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(data);
+                throw e;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*.{data,tmp}")) {
+                for (Path file : files) {
+                    if (file.equals(data)) continue;
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                        // Файл еще отображен в память
+                    }
+                }
+            }
+        }
+
+        private void writeData(Path data, long[] keys, int postingCount, byte[] versionText, int offset)
+                throws IOException {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(data), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(rows);
+                out.writeInt(keys.length);
+                out.writeInt(postingCount);
+                out.writeInt(heap.size());
+                out.writeInt(versionText.length);
+                out.writeInt(0);
+                out.write(versionText);
+                out.write(new byte[offset - HEADER_BYTES - versionText.length]);
+                for (int i = 0; i < rows; i++) {
+                    out.writeDouble(ratings[i]);
+                }
+                for (long key : keys) {
+                    out.writeLong(key);
+                }
+                for (int i = 0; i < rows; i++) {
+                    out.writeInt(ids[i]);
+                }
+                for (int i = 0; i < rows; i++) {
+                    out.writeInt(dates[i]);
+                }
+                for (int i = 0; i <= rows; i++) {
+                    out.writeInt(titleOffsets[i]);
+                }
+                int position = 0;
+                for (long key : keys) {
+                    out.writeInt(position);
+                    position += grams.get(key).size;
+                }
+                out.writeInt(position);
+                for (long key : keys) {
+                    Postings postings = grams.get(key);
+                    for (int i = 0; i < postings.size; i++) {
+                        out.writeInt(postings.rows[i]);
+                    }
+                }
+                heap.writeTo(out);
+            }
+        }
+    }
+
+    // Строки с триграммой по возрастанию; повтор триграммы в одном названии записывается один раз
+    private static final class Postings {
+        int[] rows = new int[4];
+        int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row) return;
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+}
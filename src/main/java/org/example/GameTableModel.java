@@ -0,0 +1,573 @@
+package org.example;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+// Модель таблицы, которая держит в памяти только строки рядом с видимой областью.
+// Страницы читаются keyset-пагинацией по ключу сортировки запроса, все состояние модели меняется только в EDT.
+// После изменений данных модель запрашивает у БД только изменившиеся строки (getChangesSince) и вставляет,
+// заменяет или удаляет их на месте, сохраняя прокрутку и выделение
+public class GameTableModel extends AbstractTableModel {
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_ROWS = 50 * PAGE_SIZE;
+    private static final int MAX_ANCHORS = 4096;
+    // Дальше от известного ключа страница читается через промежуточные ключи (DatabaseManager.queryAnchors);
+    // за один переход их запоминается не больше JUMP_ANCHORS, более точные добираются следующими переходами
+    private static final int MAX_SKIP = 10 * PAGE_SIZE;
+    private static final int JUMP_ANCHORS = 256;
+    private static final long COUNT_LIMIT = 100_000;
+    // При большем числе изменений таблица перечитывается целиком
+    private static final int MAX_DELTA = 1000;
+    private static final String[] COLUMN_NAMES = {"ID", "Title", "Release Date", "Rating"};
+    private static final Class<?>[] COLUMN_CLASSES = {Integer.class, String.class, String.class, Double.class};
+
+    private final DatabaseManager dbManager;
+    private final Executor executor;
+    private final Consumer<Exception> onError;
+    // Номер строки -> ключ продолжения, чтение с которого начинается с этой строки
+    private final Anchors anchors = new Anchors();
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<QueryHandle> inFlight = new HashSet<>();
+    private GameQuery query = GameQuery.all();
+    // В памяти только прочитанные страницы
+    private LoadedRows rows = new LoadedRows(query.order());
+    private boolean ranked;
+    private int rankedLimit;
+    private int rowCount;
+    private int lastRow;
+    private long generation;
+    // Меняется, когда изменения сдвигают строки: страница, запрошенная до сдвига, легла бы не на свое место
+    private long layout;
+    // Версия данных, от которой запрашиваются изменения; null, пока она не получена
+    private String version;
+    private boolean deltaRunning;
+    private boolean deltaPending;
+
+    public GameTableModel(DatabaseManager dbManager, Executor executor, Consumer<Exception> onError) {
+        this.dbManager = dbManager;
+        this.executor = executor;
+        this.onError = onError;
+    }
+
+    public GameQuery getQuery() {
+        return query;
+    }
+
+    // Версия данных, которым соответствуют показанные строки; null, пока она не получена
+    public String getVersion() {
+        return version;
+    }
+
+    public void setQuery(GameQuery query) {
+        setQuery(query, null, null);
+    }
+
+    // firstPage - первая страница, прочитанная заранее (например, пока было открыто окно входа), и версия данных,
+    // взятая до ее чтения: страница показывается сразу, а запрашивается только число строк
+    public void setQuery(GameQuery query, DatabaseManager.GamePage firstPage, String firstPageVersion) {
+        reset(query, false);
+        boolean prefetched = firstPage != null && firstPageVersion != null;
+        long gen = generation;
+        QueryHandle handle = track();
+        executor.execute(() -> {
+            try {
+                if (!prefetched) {
+                    // Версия берется до чтения страниц, иначе изменения между ними потерялись бы
+                    String current = dbManager.getChangeVersion();
+                    SwingUtilities.invokeLater(() -> {
+                        if (gen != generation) return;
+                        version = current;
+                        requestPage(0);
+                    });
+                }
+                long count = dbManager.countGames(query, COUNT_LIMIT, handle);
+                SwingUtilities.invokeLater(() -> {
+                    inFlight.remove(handle);
+                    if (gen != generation) return;
+                    rowCount = (int) Math.min(count, Integer.MAX_VALUE);
+                    fireTableDataChanged();
+                });
+            } catch (SQLException | RuntimeException e) {
+                failed(gen, handle, e);
+            }
+        });
+        if (prefetched) {
+            version = firstPageVersion;
+            pageLoaded(0, firstPage);
+        }
+    }
+
+    // Щелчок по заголовку: сортировка по колонке, повторный щелчок меняет направление.
+    // Ранжированный поиск упорядочен по сходству и не пересортировывается
+    public void toggleSort(int column) {
+        if (ranked) return;
+        GameQuery.Sort sort = GameQuery.Sort.values()[column];
+        setQuery(query.sortedBy(sort, query.sort() == sort && !query.descending()));
+    }
+
+    // Ранжированный нечеткий поиск не разбивается на страницы: результатов не больше maxResults
+    public void showRanked(String title, int maxResults) {
+        reset(GameQuery.byTitle(title).sortedBy(query.sort(), query.descending()), true);
+        rankedLimit = maxResults;
+        long gen = generation;
+        QueryHandle handle = track();
+        executor.execute(() -> {
+            try {
+                String current = dbManager.getChangeVersion();
+                List<DatabaseManager.Game> found = new ArrayList<>(maxResults);
+                dbManager.searchGamesSimilar(title, maxResults, handle, true, found::add);
+                SwingUtilities.invokeLater(() -> {
+                    inFlight.remove(handle);
+                    if (gen != generation) return;
+                    version = current;
+                    rows.put(0, found);
+                    rowCount = found.size();
+                    fireTableDataChanged();
+                });
+            } catch (SQLException | RuntimeException e) {
+                failed(gen, handle, e);
+            }
+        });
+    }
+
+    // Применяет изменения с последней известной версии. Вызов во время запроса не теряется:
+    // изменения будут запрошены еще раз после текущих
+    public void refreshChanges() {
+        if (version == null) return;
+        if (deltaRunning) {
+            deltaPending = true;
+            return;
+        }
+        deltaRunning = true;
+        String since = version;
+        long gen = generation;
+        QueryHandle handle = track();
+        executor.execute(() -> {
+            try {
+                DatabaseManager.Changes changes = dbManager.getChangesSince(since, MAX_DELTA);
+                SwingUtilities.invokeLater(() -> {
+                    inFlight.remove(handle);
+                    if (gen != generation) return;
+                    deltaRunning = false;
+                    if (changes.reset()) {
+                        reload();
+                        return;
+                    }
+                    version = changes.version();
+                    applyChanges(changes);
+                    if (deltaPending) {
+                        deltaPending = false;
+                        refreshChanges();
+                    }
+                });
+            } catch (SQLException | RuntimeException e) {
+                failed(gen, handle, e);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation) deltaRunning = false;
+                });
+            }
+        });
+    }
+
+    public void cancelAll() {
+        for (QueryHandle handle : inFlight) {
+            handle.cancel();
+        }
+        inFlight.clear();
+    }
+
+    public DatabaseManager.Game getGameAt(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    // Отсортированная колонка помечается стрелкой направления
+    @Override
+    public String getColumnName(int column) {
+        if (ranked || query.sort().ordinal() != column) return COLUMN_NAMES[column];
+        return COLUMN_NAMES[column] + (query.descending() ? " \u25BC" : " \u25B2");
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int pageIndex = row / PAGE_SIZE;
+        DatabaseManager.Game game = rows.get(row);
+        if (game == null) {
+            requestPage(pageIndex);
+            return null;
+        }
+        // Подгружаем следующую страницу по направлению прокрутки
+        int lastPage = lastRow / PAGE_SIZE;
+        if (pageIndex != lastPage) {
+            requestPage(pageIndex > lastPage ? pageIndex + 1 : pageIndex - 1);
+        }
+        lastRow = row;
+        return switch (column) {
+            case 0 -> game.id();
+            case 1 -> game.title();
+            case 2 -> game.releaseDate();
+            default -> game.rating();
+        };
+    }
+
+    private void reset(GameQuery query, boolean ranked) {
+        cancelAll();
+        generation++;
+        // Стрелка сортировки в заголовке обновляется только при пересоздании колонок
+        boolean headerChanged = ranked != this.ranked || query.sort() != this.query.sort()
+                || query.descending() != this.query.descending();
+        this.query = query;
+        this.ranked = ranked;
+        rows = new LoadedRows(query.order());
+        anchors.clear();
+        loading.clear();
+        rowCount = 0;
+        lastRow = 0;
+        version = null;
+        deltaRunning = false;
+        deltaPending = false;
+        if (headerChanged) {
+            fireTableStructureChanged();
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    private void reload() {
+        if (ranked) {
+            showRanked(query.title(), rankedLimit);
+        } else {
+            setQuery(query);
+        }
+    }
+
+    private QueryHandle track() {
+        QueryHandle handle = new QueryHandle();
+        inFlight.add(handle);
+        return handle;
+    }
+
+    private void requestPage(int pageIndex) {
+        if (ranked || version == null || pageIndex < 0) return;
+        int start = pageIndex * PAGE_SIZE;
+        int end = Math.min(start + PAGE_SIZE, rowCount);
+        if (pageIndex > 0 && start >= rowCount) return;
+        if (end > start && rows.loaded(start, end) == end - start) return;
+        if (!loading.add(pageIndex)) return;
+
+        // Ближайший известный ключ слева от страницы; OFFSET отсчитывается только от него.
+        // При далеком переходе сначала читаются ключи через каждые step строк до страницы
+        int anchor = anchors.floor(start);
+        String continuation = anchor >= 0 ? anchors.key(anchor) : null;
+        int anchorRow = anchor >= 0 ? anchors.row(anchor) : 0;
+        int skip = start - anchorRow;
+        int step = skip > MAX_SKIP ? PAGE_SIZE * Math.max(1, skip / (PAGE_SIZE * JUMP_ANCHORS)) : 0;
+        GameQuery current = query;
+        long gen = generation;
+        long requestLayout = layout;
+        QueryHandle handle = track();
+        executor.execute(() -> {
+            try {
+                List<String> jump = step > 0
+                        ? dbManager.queryAnchors(current, continuation, skip - skip % step, step, handle)
+                        : List.of();
+                DatabaseManager.GamePage page = dbManager.queryGames(current,
+                        jump.isEmpty() ? continuation : jump.getLast(), skip - jump.size() * step, PAGE_SIZE, handle);
+                SwingUtilities.invokeLater(() -> {
+                    inFlight.remove(handle);
+                    if (gen != generation) return;
+                    loading.remove(pageIndex);
+                    if (requestLayout != layout) {
+                        // Строки сдвинулись, пока шел запрос: страница перезапросится при отрисовке
+                        if (start < rowCount) fireTableRowsUpdated(start, Math.min(start + PAGE_SIZE, rowCount) - 1);
+                        return;
+                    }
+                    for (int i = 0; i < jump.size(); i++) {
+                        rememberAnchor(anchorRow + (i + 1) * step, jump.get(i));
+                    }
+                    pageLoaded(start, page);
+                });
+            } catch (SQLException | RuntimeException e) {
+                failed(gen, handle, e);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation) loading.remove(pageIndex);
+                });
+            }
+        });
+    }
+
+    private void pageLoaded(int first, DatabaseManager.GamePage page) {
+        List<DatabaseManager.Game> loaded = page.games();
+        rows.put(first, loaded);
+        int end = first + loaded.size();
+        if (page.next() != null) {
+            rememberAnchor(end, page.next());
+        }
+
+        // Оценка числа строк могла быть неточной: уточняем ее по фактическому концу данных
+        if (page.next() == null && end != rowCount) {
+            int old = rowCount;
+            rowCount = end;
+            rows.unload(end, Integer.MAX_VALUE);
+            if (end < old) {
+                fireTableRowsDeleted(end, old - 1);
+            } else {
+                fireTableRowsInserted(old, end - 1);
+            }
+        } else if (page.next() != null && end >= rowCount) {
+            int old = rowCount;
+            rowCount = end + PAGE_SIZE;
+            fireTableRowsInserted(old, rowCount - 1);
+        }
+        evictDistantRows();
+        if (!loaded.isEmpty()) {
+            fireTableRowsUpdated(first, Math.min(end, rowCount) - 1);
+        }
+    }
+
+    // Удаленные строки убираются; измененные заменяются на месте или переставляются, если изменился ключ
+    // сортировки или строка перестала подходить под фильтр; новые встают по порядку сортировки.
+    // Удаления применяются первыми: id, удаленный и добавленный заново, приходит в обоих списках.
+    // Место в выборке известно только у загруженных и вставленных строк: незагруженная строка, которую
+    // изменили или удалили, могла быть в любом незагруженном промежутке, тогда строки пересчитываются
+    private void applyChanges(DatabaseManager.Changes changes) {
+        boolean unplaced = false;
+        for (int id : changes.deleted()) {
+            int row = rows.rowOf(id);
+            if (row >= 0) {
+                removeRow(row);
+            } else {
+                unplaced = true;
+            }
+        }
+        Comparator<DatabaseManager.Game> order = query.order();
+        for (DatabaseManager.Game game : changes.upserted()) {
+            int row = rows.rowOf(game.id());
+            if (ranked) {
+                // Ранжированный список не дополняется: новая строка могла и не попасть в лучшие совпадения
+                if (row >= 0) replaceRow(row, game);
+            } else if (row >= 0 && query.matches(game) && order.compare(rows.get(row), game) == 0) {
+                replaceRow(row, game);
+            } else {
+                if (row >= 0) {
+                    removeRow(row);
+                } else if (!changes.inserted().contains(game.id())) {
+                    unplaced = true;
+                }
+                if (query.matches(game)) insertRow(game);
+            }
+        }
+        if (unplaced && !ranked) recount();
+    }
+
+    // Строки до первого незагруженного промежутка пронумерованы точно, дальше номера могли сдвинуться:
+    // они выгружаются вместе с ключами продолжения и дочитываются при отрисовке, а число строк
+    // запрашивается заново
+    private void recount() {
+        int gap = rows.firstUnloaded();
+        if (gap >= rowCount) return;
+        rows.unload(gap, Integer.MAX_VALUE);
+        anchors.removeRange(gap + 1, Integer.MAX_VALUE);
+        layout++;
+        fireTableRowsUpdated(gap, rowCount - 1);
+        GameQuery current = query;
+        long gen = generation;
+        long requestLayout = layout;
+        QueryHandle handle = track();
+        executor.execute(() -> {
+            try {
+                long count = dbManager.countGames(current, COUNT_LIMIT, handle);
+                SwingUtilities.invokeLater(() -> {
+                    inFlight.remove(handle);
+                    // После новых изменений число уже неточно; конец данных уточнит его при чтении страниц
+                    if (gen != generation || requestLayout != layout) return;
+                    // Число ограничено COUNT_LIMIT, а прокрутка могла уйти дальше
+                    if (count >= COUNT_LIMIT && rowCount > count) return;
+                    int old = rowCount;
+                    rowCount = (int) Math.min(count, Integer.MAX_VALUE);
+                    if (rowCount > old) {
+                        fireTableRowsInserted(old, rowCount - 1);
+                    } else if (rowCount < old) {
+                        rows.unload(rowCount, Integer.MAX_VALUE);
+                        anchors.removeRange(rowCount + 1, Integer.MAX_VALUE);
+                        fireTableRowsDeleted(rowCount, old - 1);
+                    }
+                });
+            } catch (SQLException | RuntimeException e) {
+                failed(gen, handle, e);
+            }
+        });
+    }
+
+    private void replaceRow(int row, DatabaseManager.Game game) {
+        rows.set(row, game);
+        fireTableRowsUpdated(row, row);
+    }
+
+    private void removeRow(int row) {
+        rows.remove(row);
+        // Ключ продолжения на месте удаленной строки теперь читает следующую за ней
+        anchors.shift(row + 1, -1);
+        rowCount--;
+        layout++;
+        fireTableRowsDeleted(row, row);
+    }
+
+    // Место новой строки известно точно, если загружены ее соседи по порядку сортировки. Если она попадает
+    // в незагруженный промежуток, сдвигаются только строки после него: сам промежуток дочитается из БД
+    private void insertRow(DatabaseManager.Game game) {
+        int next = rows.rowAfter(game);
+        int position = next >= 0 ? next : rowCount;
+        int gapStart = rows.loadedBefore(position) + 1;
+        if (gapStart < position) {
+            // Ключи продолжения внутри промежутка теряют точность; ключ сразу после загруженной строки верен
+            anchors.removeRange(gapStart + 1, position + 1);
+        }
+        rows.insert(position, gapStart == position ? game : null);
+        anchors.shift(position + 1, 1);
+        rowCount++;
+        layout++;
+        fireTableRowsInserted(position, position);
+        evictDistantRows();
+    }
+
+    // Вытесняем строки, самые дальние от текущей позиции прокрутки
+    private void evictDistantRows() {
+        while (rows.size() > MAX_CACHED_ROWS) {
+            int first = rows.first();
+            int last = rows.last();
+            // Сразу столько строк, сколько можно снять с дальнего края, пока он остается дальним
+            int count = Math.min(rows.size() - MAX_CACHED_ROWS,
+                    Math.max(1, Math.abs((lastRow - first) - (last - lastRow))));
+            if (lastRow - first > last - lastRow) {
+                rows.unload(first, first + count);
+            } else {
+                rows.unload(last - count + 1, last + 1);
+            }
+        }
+    }
+
+    private void rememberAnchor(int row, String continuation) {
+        anchors.put(row, continuation);
+        if (anchors.size() > MAX_ANCHORS) {
+            // Отбрасываем якорь, самый дальний от текущей позиции прокрутки
+            int low = anchors.row(0);
+            int high = anchors.row(anchors.size() - 1);
+            anchors.removeAt(lastRow - low > high - lastRow ? 0 : anchors.size() - 1);
+        }
+    }
+
+    // Ошибки БД и ошибки самого запроса (например, неверный ключ продолжения) показываются одинаково
+    private void failed(long gen, QueryHandle handle, Exception e) {
+        SwingUtilities.invokeLater(() -> {
+            inFlight.remove(handle);
+            if (gen == generation && !(e instanceof SQLException sql && QueryHandle.isCancellation(sql))) {
+                onError.accept(e);
+            }
+        });
+    }
+
+    // Номер строки -> ключ продолжения в упорядоченных массивах: сдвиг номеров - проход по хвосту массива
+    private static final class Anchors {
+        private int[] rows = new int[16];
+        private String[] keys = new String[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int row(int index) {
+            return rows[index];
+        }
+
+        String key(int index) {
+            return keys[index];
+        }
+
+        // Последний ключ не дальше row или -1
+        int floor(int row) {
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        void put(int row, String key) {
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            if (index >= 0) {
+                keys[index] = key;
+                return;
+            }
+            index = -index - 1;
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            rows[index] = row;
+            keys[index] = key;
+            size++;
+        }
+
+        void removeAt(int index) {
+            removeIndexes(index, index + 1);
+        }
+
+        // Ключи строк [from, to)
+        void removeRange(int from, int to) {
+            removeIndexes(ceiling(from), ceiling(to));
+        }
+
+        // Номера с from и дальше меняются на delta; при совпадении номеров остается сдвинутый ключ
+        void shift(int from, int delta) {
+            int first = ceiling(from);
+            for (int i = first; i < size; i++) {
+                rows[i] += delta;
+            }
+            if (delta < 0 && first > 0 && first < size && rows[first - 1] >= rows[first]) {
+                removeAt(first - 1);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0, size, null);
+            size = 0;
+        }
+
+        private int ceiling(int row) {
+            int index = Arrays.binarySearch(rows, 0, size, row);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private void removeIndexes(int from, int to) {
+            if (from >= to) return;
+            System.arraycopy(rows, to, rows, from, size - to);
+            System.arraycopy(keys, to, keys, from, size - to);
+            Arrays.fill(keys, size - (to - from), size, null);
+            size -= to - from;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Слушает канал games_changed на отдельном соединении вне пула и передает изменения подписчику.
+// После переподключения сообщает об изменении всех строк: уведомления за время разрыва потеряны
+public class GamesChangeListener implements AutoCloseable {
+    static final String CHANNEL = "games_changed";
+    private static final int POLL_TIMEOUT_MILLIS = 10_000;
+    private static final long RECONNECT_DELAY_MILLIS = 2_000;
+
+    private final ConnectionPool pool;
+    private final Consumer<Change> onChange;
+    private final Thread thread;
+    private volatile Connection connection;
+    private volatile boolean running = true;
+
+    public GamesChangeListener(ConnectionPool pool, Consumer<Change> onChange) {
+        this.pool = pool;
+        this.onChange = onChange;
+        this.thread = Thread.ofVirtual().name("games-change-listener").unstarted(this::run);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Connection current = connection;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection conn = pool.openUnpooled();
+                 Statement stmt = conn.createStatement()) {
+                connection = conn;
+                stmt.execute("LISTEN " + CHANNEL);
+                onChange.accept(Change.ALL);
+                PGConnection pgConn = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConn.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null) continue;
+                    for (PGNotification notification : notifications) {
+                        onChange.accept(Change.parse(notification.getParameter()));
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                onChange.accept(Change.ALL);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            } finally {
+                connection = null;
+            }
+        }
+    }
+
+    public record Change(boolean all, Set<Integer> ids) {
+        static final Change ALL = new Change(true, Set.of());
+
+        static Change parse(String payload) {
+            if (payload == null || payload.isEmpty() || payload.equals("*")) return ALL;
+            Set<Integer> ids = new HashSet<>();
+            try {
+                for (String id : payload.split(",")) {
+                    ids.add(Integer.parseInt(id));
+                }
+            } catch (NumberFormatException e) {
+                return ALL;
+            }
+            return new Change(false, ids);
+        }
+    }
+}
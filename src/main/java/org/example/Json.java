@@ -0,0 +1,186 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Минимальный JSON для HTTP API: запись записей games и разбор плоских объектов из тела запроса
+final class Json {
+    private Json() {
+    }
+
+    static String game(DatabaseManager.Game game) {
+        return "{\"id\":" + game.id()
+                + ",\"title\":" + quote(game.title())
+                + ",\"releaseDate\":" + quote(game.releaseDate())
+                + ",\"rating\":" + number(game.rating()) + "}";
+    }
+
+    static String games(List<DatabaseManager.Game> games) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < games.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(game(games.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    static String number(Double value) {
+        return value != null && Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // Объект без вложенных объектов и массивов; значения - String, Double, Boolean или null
+    static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> result = parser.object();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) throw parser.error("Unexpected trailing content");
+        return result;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> object() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                result.put(key, value());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') return result;
+                if (c != ',') throw error("Expected ',' or '}'");
+            }
+        }
+
+        private Object value() {
+            char c = peek();
+            if (c == '"') return string();
+            if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            }
+            if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) return number();
+            throw error("Unsupported value");
+        }
+
+        private Double number() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number");
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) throw error("Invalid escape");
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid escape");
+                        }
+                        pos += 4;
+                    }
+                    default -> throw error("Invalid escape");
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) throw error("Expected '" + expected + "'");
+        }
+
+        private char peek() {
+            if (pos >= text.length()) throw error("Unexpected end of input");
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at position " + pos + ": " + message);
+        }
+    }
+}
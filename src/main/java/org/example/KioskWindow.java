@@ -0,0 +1,205 @@
+package org.example;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Окно только для чтения поверх локального снимка GameSnapshot (запуск с --kiosk): открывается без входа
+// и без обращения к серверу, поиск по названию идет по индексу снимка на каждое нажатие клавиши.
+// Если заданы -Dgames.kiosk.user и -Dgames.kiosk.password (обычно учетная запись guest), окно раз
+// в -Dgames.kiosk.refreshSeconds (60) секунд подтягивает в снимок изменения через одно короткое соединение,
+// по возможности к реплике; пула, LISTEN и постоянных соединений у киоска нет, поэтому много киосков
+// не нагружают основной сервер. Без сервера показывается последний сохраненный снимок
+public class KioskWindow {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final Path path;
+    private final String username = System.getProperty("games.kiosk.user");
+    private final String password = System.getProperty("games.kiosk.password");
+    private final long refreshSeconds = Long.getLong("games.kiosk.refreshSeconds", 60);
+    // Обновления снимка идут по одному
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private final SnapshotTableModel tableModel = new SnapshotTableModel();
+    // Показанный снимок; меняется только в EDT
+    private GameSnapshot snapshot;
+    // Последний снимок потока обновления; EDT получает его через invokeLater
+    private GameSnapshot latest;
+    private JTextField searchField;
+    private JLabel statusLabel;
+    private JLabel serverLabel;
+
+    public KioskWindow(Path path) {
+        this.path = path;
+    }
+
+    public static Path snapshotPath() {
+        return Path.of(System.getProperty("games.snapshot.path", "games.snapshot"));
+    }
+
+    public void createAndShowGUI() {
+        boolean online = username != null && password != null;
+        if (Files.exists(path)) {
+            try {
+                snapshot = GameSnapshot.open(path);
+            } catch (IOException e) {
+                if (!online) {
+                    JOptionPane.showMessageDialog(null, "Cannot open snapshot: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+        } else if (!online) {
+            JOptionPane.showMessageDialog(null, "Snapshot " + path + " does not exist. Set -Dgames.kiosk.user "
+                    + "and -Dgames.kiosk.password to download it from the server.");
+            System.exit(1);
+        }
+
+        JFrame frame = new JFrame("Game Catalog");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(800, 600);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                refresher.shutdownNow();
+            }
+        });
+
+        JTable table = new JTable(tableModel);
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel searchPanel = new JPanel(new FlowLayout());
+        searchField = new JTextField(30);
+        searchPanel.add(new JLabel("Search Title:"));
+        searchPanel.add(searchField);
+        frame.add(searchPanel, BorderLayout.NORTH);
+        // Поиск локальный и быстрый, поэтому выполняется без задержки на каждое изменение текста
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+
+        JPanel statusPanel = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        serverLabel = new JLabel(online ? "Connecting..." : "Offline");
+        statusPanel.add(statusLabel, BorderLayout.WEST);
+        statusPanel.add(serverLabel, BorderLayout.EAST);
+        frame.add(statusPanel, BorderLayout.SOUTH);
+
+        search();
+        frame.setVisible(true);
+        if (online) {
+            latest = snapshot;
+            refresher.scheduleWithFixedDelay(this::refresh, 0, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void search() {
+        if (snapshot == null) {
+            statusLabel.setText("Downloading snapshot...");
+            return;
+        }
+        long start = System.nanoTime();
+        int[] rows = snapshot.search(searchField.getText());
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        tableModel.show(snapshot, rows);
+        statusLabel.setText(String.format("%,d of %,d games, search %,d µs", rows.length, snapshot.size(),
+                micros));
+    }
+
+    // Выполняется в потоке обновления; снимок заменяется в EDT, текущий поиск повторяется по новому снимку
+    private void refresh() {
+        try (Connection conn = DatabaseManager.openForRead(DatabaseEndpoints.fromSystemProperties(),
+                username, password)) {
+            GameSnapshot updated = latest != null ? latest.refresh(conn) : GameSnapshot.create(path, conn);
+            String state = "Updated " + LocalTime.now().format(TIME);
+            boolean changed = updated != latest;
+            latest = updated;
+            SwingUtilities.invokeLater(() -> {
+                if (changed) {
+                    snapshot = updated;
+                    search();
+                }
+                serverLabel.setText(state);
+            });
+        } catch (IOException | SQLException e) {
+            showServerState("Update failed: " + e.getMessage());
+        }
+    }
+
+    private void showServerState(String text) {
+        SwingUtilities.invokeLater(() -> serverLabel.setText(text));
+    }
+
+    // Строки декодируются из отображенного файла только при отрисовке
+    private static final class SnapshotTableModel extends AbstractTableModel {
+        private static final String[] COLUMN_NAMES = {"ID", "Title", "Release Date", "Rating"};
+        private static final Class<?>[] COLUMN_CLASSES = {Integer.class, String.class, String.class, Double.class};
+
+        private GameSnapshot snapshot;
+        private int[] rows = new int[0];
+
+        void show(GameSnapshot snapshot, int[] rows) {
+            this.snapshot = snapshot;
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            DatabaseManager.Game game = snapshot.get(rows[row]);
+            return switch (column) {
+                case 0 -> game.id();
+                case 1 -> game.title();
+                case 2 -> game.releaseDate();
+                default -> game.rating();
+            };
+        }
+    }
+}
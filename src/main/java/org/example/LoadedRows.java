@@ -0,0 +1,242 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Загруженные строки GameTableModel: непрерывные участки (блоки) по возрастанию номера первой строки
+// и индекс game_id -> строка. Вставка и удаление строки меняют только номера начала следующих блоков.
+// Строки упорядочены по order запроса, поэтому строка из индекса находится двоичным поиском; если порядок
+// БД и order для нее расходятся (сравнение названий), она ищется перебором
+final class LoadedRows {
+    private final Comparator<DatabaseManager.Game> order;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<Integer, DatabaseManager.Game> byId = new HashMap<>();
+    private int size;
+
+    LoadedRows(Comparator<DatabaseManager.Game> order) {
+        this.order = order;
+    }
+
+    int size() {
+        return size;
+    }
+
+    DatabaseManager.Game get(int row) {
+        int b = blockAt(row);
+        return b >= 0 ? blocks.get(b).games.get(row - blocks.get(b).start) : null;
+    }
+
+    // Число загруженных строк в [from, to)
+    int loaded(int from, int to) {
+        int count = 0;
+        for (int b = Math.max(floorBlock(from), 0); b < blocks.size() && blocks.get(b).start < to; b++) {
+            Block block = blocks.get(b);
+            count += Math.max(0, Math.min(to, block.end()) - Math.max(from, block.start));
+        }
+        return count;
+    }
+
+    // Номер строки с этим game_id или -1
+    int rowOf(int id) {
+        DatabaseManager.Game game = byId.get(id);
+        if (game == null) return -1;
+        int row = rowAfter(game, false);
+        if (row >= 0 && get(row) == game) return row;
+        for (Block block : blocks) {
+            int index = block.games.indexOf(game);
+            if (index >= 0) return block.start + index;
+        }
+        return -1;
+    }
+
+    // Первая загруженная строка, которая по order идет после game, или -1
+    int rowAfter(DatabaseManager.Game game) {
+        return rowAfter(game, true);
+    }
+
+    // Первая загруженная строка не раньше game (after - строго после) или -1
+    private int rowAfter(DatabaseManager.Game game, boolean after) {
+        int limit = after ? 0 : -1;
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(blocks.get(mid).games.getLast(), game) <= limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == blocks.size()) return -1;
+        Block block = blocks.get(low);
+        int first = 0;
+        int last = block.games.size();
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (order.compare(block.games.get(mid), game) <= limit) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        return block.start + first;
+    }
+
+    // Последняя загруженная строка перед row или -1
+    int loadedBefore(int row) {
+        int b = floorBlock(row - 1);
+        return b >= 0 ? Math.min(blocks.get(b).end(), row) - 1 : -1;
+    }
+
+    // Первая незагруженная строка
+    int firstUnloaded() {
+        return blocks.isEmpty() || blocks.getFirst().start > 0 ? 0 : blocks.getFirst().end();
+    }
+
+    int first() {
+        return blocks.getFirst().start;
+    }
+
+    int last() {
+        return blocks.getLast().end() - 1;
+    }
+
+    // Строки first, first + 1, ... заменяются games
+    void put(int first, List<DatabaseManager.Game> games) {
+        if (games.isEmpty()) return;
+        unload(first, first + games.size());
+        int b = insertionPoint(first);
+        blocks.add(b, new Block(first, new ArrayList<>(games)));
+        for (DatabaseManager.Game game : games) {
+            byId.put(game.id(), game);
+        }
+        size += games.size();
+        b = mergeWithNext(b - 1) ? b - 1 : b;
+        mergeWithNext(b);
+    }
+
+    void set(int row, DatabaseManager.Game game) {
+        put(row, List.of(game));
+    }
+
+    // Строки с row и дальше сдвигаются на одну вниз; game = null оставляет на месте row незагруженную строку
+    void insert(int row, DatabaseManager.Game game) {
+        int b = blockAt(row);
+        if (b >= 0 && blocks.get(b).start < row) split(b, row);
+        for (int i = insertionPoint(row); i < blocks.size(); i++) {
+            blocks.get(i).start++;
+        }
+        if (game != null) set(row, game);
+    }
+
+    // Строка row удаляется, следующие сдвигаются на одну вверх
+    void remove(int row) {
+        unload(row, row + 1);
+        int b = insertionPoint(row + 1);
+        for (int i = b; i < blocks.size(); i++) {
+            blocks.get(i).start--;
+        }
+        mergeWithNext(b - 1);
+    }
+
+    // Строки в [from, to) становятся незагруженными; номера остальных не меняются
+    void unload(int from, int to) {
+        for (int b = Math.max(floorBlock(from), 0); b < blocks.size() && blocks.get(b).start < to; ) {
+            Block block = blocks.get(b);
+            int cutFrom = Math.max(from, block.start);
+            int cutTo = Math.min(to, block.end());
+            if (cutFrom >= cutTo) {
+                b++;
+                continue;
+            }
+            if (cutFrom > block.start && cutTo < block.end()) {
+                split(b, cutTo);
+            }
+            List<DatabaseManager.Game> cut = block.games.subList(cutFrom - block.start, cutTo - block.start);
+            for (DatabaseManager.Game game : cut) {
+                byId.remove(game.id(), game);
+            }
+            size -= cut.size();
+            cut.clear();
+            if (cutFrom == block.start) block.start = cutTo;
+            if (block.games.isEmpty()) {
+                blocks.remove(b);
+            } else {
+                b++;
+            }
+        }
+    }
+
+    void clear() {
+        blocks.clear();
+        byId.clear();
+        size = 0;
+    }
+
+    // Блок, в котором лежит row, или -1
+    private int blockAt(int row) {
+        int b = floorBlock(row);
+        return b >= 0 && row < blocks.get(b).end() ? b : -1;
+    }
+
+    // Последний блок, начинающийся не позже row, или -1
+    private int floorBlock(int row) {
+        return insertionPoint(row + 1) - 1;
+    }
+
+    // Первый блок, начинающийся не раньше row
+    private int insertionPoint(int row) {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocks.get(mid).start < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Блок b делится перед строкой row; строки после нее переходят в новый блок
+    private void split(int b, int row) {
+        Block block = blocks.get(b);
+        List<DatabaseManager.Game> tail = block.games.subList(row - block.start, block.games.size());
+        blocks.add(b + 1, new Block(row, new ArrayList<>(tail)));
+        tail.clear();
+    }
+
+    // Смежные блоки b и b + 1 сливаются: меньший переносится в больший
+    private boolean mergeWithNext(int b) {
+        if (b < 0 || b + 1 >= blocks.size() || blocks.get(b).end() != blocks.get(b + 1).start) return false;
+        Block left = blocks.get(b);
+        Block right = blocks.get(b + 1);
+        if (left.games.size() >= right.games.size()) {
+            left.games.addAll(right.games);
+            blocks.remove(b + 1);
+        } else {
+            right.games.addAll(0, left.games);
+            right.start = left.start;
+            blocks.remove(b);
+        }
+        return true;
+    }
+
+    private static final class Block {
+        int start;
+        final ArrayList<DatabaseManager.Game> games;
+
+        Block(int start, ArrayList<DatabaseManager.Game> games) {
+            this.start = start;
+            this.games = games;
+        }
+
+        int end() {
+            return start + games.size();
+        }
+    }
+}
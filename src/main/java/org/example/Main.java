@@ -2,36 +2,61 @@ package org.example;
 
 import javax.swing.*;
 import java.awt.*;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 public class Main {
     public static final String SUPER_USERNAME = "postgres";
     public static final String SUPER_PASSWORD = "your_password"; // Замените на ваш пароль
 
+    private static ConnectionPool maintenancePool;
+
     public static void main(String[] args) {
+        // Киоск читает локальный снимок и к серверу при запуске не обращается
+        if (args.length > 0 && args[0].equals("--kiosk")) {
+            SwingUtilities.invokeLater(() -> new KioskWindow(KioskWindow.snapshotPath()).createAndShowGUI());
+            return;
+        }
+        // Проверка схемы и чтение первой страницы идут в фоне параллельно с окном входа
+        Startup startup = Startup.begin();
+        if (args.length > 0 && args[0].equals("--server")) {
+            // Без GUI база уже должна быть создана и иметь первого администратора
+            if (!startup.databaseExists()) {
+                System.err.println("Database games_db does not exist. Run the desktop app once to initialize it.");
+                System.exit(1);
+            }
+            try {
+                startup.awaitSchema();
+            } catch (SQLException e) {
+                System.err.println("Schema migration failed: " + e.getMessage());
+                System.exit(1);
+            }
+            GameServer.launch();
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             DatabaseManager dbManager = new DatabaseManager();
-            if (!databaseExists()) {
-                DatabaseInitializer.initializeDatabase(SUPER_USERNAME, SUPER_PASSWORD);
+            if (!startup.databaseExists()) {
+                DatabaseInitializer.initializeDatabase();
                 DatabaseInitializer.createFirstAdmin(dbManager);
             }
-            showLoginWindow(dbManager);
+            showLoginWindow(dbManager, startup);
         });
     }
 
-    private static boolean databaseExists() {
-        try (java.sql.Connection conn = DriverManager.getConnection(
-                "jdbc:postgresql://localhost:5432/postgres", SUPER_USERNAME, SUPER_PASSWORD);
-             java.sql.Statement stmt = conn.createStatement();
-             java.sql.ResultSet rs = stmt.executeQuery("SELECT 1 FROM pg_database WHERE datname = 'games_db'")) {
-            return rs.next();
-        } catch (SQLException e) {
-            return false;
+    // Одно соединение суперпользователя к служебной базе postgres на все административные операции
+    static synchronized ConnectionPool maintenancePool() {
+        if (maintenancePool == null) {
+            Properties props = new Properties();
+            props.setProperty("user", SUPER_USERNAME);
+            props.setProperty("password", SUPER_PASSWORD);
+            maintenancePool = new ConnectionPool(DatabaseEndpoints.fromSystemProperties().primaryUrl("postgres"),
+                    props, ConnectionPool.Config.singleConnection());
         }
+        return maintenancePool;
     }
 
-    private static void showLoginWindow(DatabaseManager dbManager) {
+    private static void showLoginWindow(DatabaseManager dbManager, Startup startup) {
         JTextField usernameField = new JTextField(15);
         JPasswordField passwordField = new JPasswordField(15);
         JPanel loginPanel = new JPanel(new GridLayout(2, 2));
@@ -44,12 +69,23 @@ public class Main {
         if (result == JOptionPane.OK_OPTION) {
             try {
                 dbManager.connect(usernameField.getText(), new String(passwordField.getPassword()));
-                GUIManager guiManager = new GUIManager(dbManager);
-                guiManager.createAndShowGUI();
             } catch (SQLException e) {
                 JOptionPane.showMessageDialog(null, "Connection failed: " + e.getMessage());
                 System.exit(1);
             }
+            try {
+                startup.awaitSchema();
+            } catch (SQLException e) {
+                JOptionPane.showMessageDialog(null, "Schema migration failed: " + e.getMessage());
+                System.exit(1);
+            }
+            GUIManager guiManager = new GUIManager(dbManager);
+            Startup.FirstPage firstPage = startup.firstPage();
+            if (firstPage != null) {
+                guiManager.createAndShowGUI(firstPage.page(), firstPage.version());
+            } else {
+                guiManager.createAndShowGUI();
+            }
         } else {
             System.exit(0);
         }
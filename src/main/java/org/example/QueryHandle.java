@@ -0,0 +1,42 @@
+package org.example;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Позволяет отменить выполняющийся запрос из другого потока через Statement.cancel()
+public class QueryHandle {
+    private Statement statement;
+    private boolean cancelled;
+
+    public synchronized void cancel() {
+        cancelled = true;
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+                // Запрос уже завершился
+            }
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    synchronized void attach(Statement stmt) throws SQLException {
+        if (cancelled) throw cancelledException();
+        statement = stmt;
+    }
+
+    synchronized void detach() {
+        statement = null;
+    }
+
+    static boolean isCancellation(SQLException e) {
+        return "57014".equals(e.getSQLState());
+    }
+
+    static SQLException cancelledException() {
+        return new SQLException("Query cancelled", "57014");
+    }
+}
@@ -0,0 +1,183 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Пулы соединений к репликам для чтения. Запросы распределяются по кругу между исправными репликами.
+// Каждая реплика раз в checkIntervalMillis сравнивается с основным сервером; реплика, которая
+// не отвечает, вышла из режима восстановления или отстала больше maxLagMillis, исключается до следующей
+// успешной проверки. До первой проверки и когда исправных реплик нет, tryBorrow возвращает null
+public final class ReplicaSet implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger("org.example.replicas");
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+    // Реплика, воспроизведшая WAL до позиции, взятой на основном сервере перед проверкой, не отстает: время
+    // последней воспроизведенной транзакции растет и тогда, когда на основном сервере ничего не пишут.
+    // Сравнение с самой репликой (получено = воспроизведено) для этого не годится: при оборванном потоке WAL
+    // воспроизведение догоняет остановившийся прием, и реплика устаревала бы с нулевым отставанием.
+    // NULL - реплика отстает и еще не воспроизвела ни одной транзакции
+    private static final String LAG_SQL = "SELECT pg_is_in_recovery(), CASE "
+            + "WHEN pg_last_wal_replay_lsn() >= ?::pg_lsn THEN 0 "
+            + "ELSE (extract(epoch FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint END";
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas;
+    private final Config config;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    // primary - пул основного сервера, с которым сравниваются реплики
+    public ReplicaSet(ConnectionPool primary, List<String> urls, Properties props, ConnectionPool.Config poolConfig,
+                      Config config) {
+        if (urls.isEmpty()) throw new IllegalArgumentException("At least one replica is required");
+        this.primary = primary;
+        this.replicas = urls.stream().map(url -> new Replica(url, new ConnectionPool(url, props, poolConfig))).toList();
+        this.config = config;
+        this.checker = Executors.newScheduledThreadPool(replicas.size(), r -> {
+            Thread t = new Thread(r, "replica-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+        // Каждая реплика проверяется своим потоком: зависшая не задерживает проверку остальных
+        for (Replica replica : replicas) {
+            checker.scheduleWithFixedDelay(() -> check(replica), 0, config.checkIntervalMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Соединение с очередной исправной репликой или null. Реплика, к которой не удалось подключиться,
+    // сразу исключается, и пробуется следующая. Занятый пул реплики - не отказ: ошибка ожидания выходит наружу
+    public Connection tryBorrow() throws SQLException {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) continue;
+            try {
+                return replica.pool.borrow();
+            } catch (SQLTimeoutException e) {
+                throw e;
+            } catch (SQLException e) {
+                replica.update(false, replica.lagMillis, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    public void setWarmUpTask(ConnectionPool.ConnectionTask task) {
+        for (Replica replica : replicas) {
+            replica.pool.setWarmUpTask(task);
+        }
+    }
+
+    // Прогревает пулы исправных реплик; ошибки не мешают прогреву остальных
+    public void warmUp() {
+        for (Replica replica : replicas) {
+            if (!replica.healthy) continue;
+            try {
+                replica.pool.warmUp();
+            } catch (SQLException ignored) {
+                // Соединения откроются по требованию
+            }
+        }
+    }
+
+    public List<Stats> getStats() {
+        return replicas.stream()
+                .map(replica -> new Stats(replica.url, replica.healthy, replica.lagMillis, replica.pool.getStats()))
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    private void check(Replica replica) {
+        String primaryLsn;
+        try (Connection conn = primary.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(PRIMARY_LSN_SQL)) {
+            rs.next();
+            primaryLsn = rs.getString(1);
+        } catch (SQLException e) {
+            // Без основного сервера отставание не измерить; состояние реплики остается прежним
+            return;
+        }
+        try (Connection conn = replica.pool.borrow();
+             PreparedStatement stmt = conn.prepareStatement(LAG_SQL)) {
+            stmt.setString(1, primaryLsn);
+            boolean inRecovery;
+            long lag;
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                inRecovery = rs.getBoolean(1);
+                lag = rs.getLong(2);
+                if (rs.wasNull()) lag = Long.MAX_VALUE;
+            }
+            if (!inRecovery) {
+                replica.update(false, 0, "server is not in recovery (promoted?)");
+            } else if (lag == Long.MAX_VALUE) {
+                replica.update(false, lag, "replica is behind the primary and has not replayed any transaction");
+            } else if (lag > config.maxLagMillis()) {
+                replica.update(false, lag, "replication lag " + lag + " ms exceeds " + config.maxLagMillis() + " ms");
+            } else {
+                replica.update(true, lag, null);
+            }
+        } catch (SQLTimeoutException e) {
+            // Все соединения пула заняты запросами - реплика отвечает
+        } catch (SQLException e) {
+            replica.update(false, replica.lagMillis, e.getMessage());
+        }
+    }
+
+    private static final class Replica {
+        final String url;
+        final ConnectionPool pool;
+        volatile boolean healthy;
+        volatile long lagMillis;
+        private boolean checked;
+
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        // В журнал попадают первая проверка и переходы между состояниями
+        synchronized void update(boolean up, long lag, String reason) {
+            lagMillis = lag;
+            if (up && !healthy) LOG.info("Replica " + url + " is serving reads, lag " + lag + " ms");
+            if (!up && (healthy || !checked)) LOG.warning("Replica " + url + " excluded from reads: " + reason);
+            healthy = up;
+            checked = true;
+        }
+    }
+
+    // Настройки задаются через -Dgames.db.replicaMaxLagMillis и -Dgames.db.replicaCheckMillis
+    public record Config(long maxLagMillis, long checkIntervalMillis) {
+        public static Config fromSystemProperties() {
+            return new Config(Long.getLong("games.db.replicaMaxLagMillis", 5_000),
+                    Long.getLong("games.db.replicaCheckMillis", 2_000));
+        }
+    }
+
+    public record Stats(String url, boolean healthy, long lagMillis, ConnectionPool.Stats pool) {
+        @Override
+        public String toString() {
+            return String.format("Replica %s: %s, lag %d ms | %s", url, healthy ? "up" : "down", lagMillis, pool);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Версионированные миграции схемы. Примененные версии с контрольными суммами хранятся в schema_version,
+// поэтому запуск с актуальной схемой стоит одного запроса. Примененный скрипт менять нельзя, только добавлять
+// следующую версию. Список ведется здесь: содержимое каталога ресурсов внутри jar не перечислить.
+// Каждая миграция выполняется одной транзакцией, поэтому в скриптах нельзя использовать CONCURRENTLY
+public final class SchemaMigrator {
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "baseline", "db/migration/V1__baseline.sql"),
+            new Migration(2, "games statistics", "db/migration/V2__games_stats.sql"),
+            new Migration(3, "game query indexes", "db/migration/V3__game_query_indexes.sql"),
+            new Migration(4, "games change tracking", "db/migration/V4__games_change_tracking.sql"),
+            new Migration(5, "games partitioning", "db/migration/V5__games_partitioning.sql"),
+            new Migration(6, "games checked writes", "db/migration/V6__games_checked_writes.sql"),
+            new Migration(7, "games inserted rows", "db/migration/V7__games_inserted_rows.sql"),
+            new Migration(8, "games archive names", "db/migration/V8__games_archive_names.sql"));
+
+    // Ключ рекомендательной блокировки: два одновременно запущенных приложения не применят миграцию дважды
+    private static final long LOCK_KEY = 0x67616d6573L;
+
+    private SchemaMigrator() {
+    }
+
+    // Возвращает число примененных миграций; 0 - схема уже актуальна
+    public static int migrate(Connection conn) throws SQLException {
+        Map<Integer, String> applied = appliedVersions(conn);
+        int count = 0;
+        for (Migration migration : MIGRATIONS) {
+            String script = migration.load();
+            String checksum = checksum(script);
+            String recorded = applied.get(migration.version());
+            if (recorded != null) {
+                verify(migration, recorded, checksum);
+            } else if (apply(conn, migration, script, checksum)) {
+                count++;
+            }
+        }
+        partitionIfRequested(conn);
+        return count;
+    }
+
+    // Секционирование games по release_date включается один раз: -Dgames.db.partitionYears=N - секция на N лет.
+    // Перевод переписывает всю таблицу под блокировкой, поэтому выполняется только по явной настройке;
+    // вернуть обычную таблицу и изменить шаг настройка не может
+    private static void partitionIfRequested(Connection conn) throws SQLException {
+        Integer years = Integer.getInteger("games.db.partitionYears");
+        if (years == null || isPartitioned(conn)) return;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+            try (PreparedStatement call = conn.prepareStatement("CALL partition_games(?)")) {
+                call.setInt(1, years);
+                call.execute();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Partitioning games failed: " + e.getMessage(), e.getSQLState(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT games_partitioned()")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    private static Map<Integer, String> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            if (!"42P01".equals(e.getSQLState())) throw e; // Таблицы еще нет - база до первой миграции
+        }
+        return applied;
+    }
+
+    private static boolean apply(Connection conn, Migration migration, String script, String checksum)
+            throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        String concurrent = null;
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version INTEGER PRIMARY KEY, "
+                    + "description TEXT NOT NULL, "
+                    + "checksum CHAR(64) NOT NULL, "
+                    + "installed_at TIMESTAMPTZ NOT NULL DEFAULT now(), "
+                    + "execution_millis BIGINT NOT NULL)");
+            // Другой экземпляр мог применить эту миграцию, пока мы ждали блокировку
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT checksum FROM schema_version WHERE version = " + migration.version())) {
+                if (rs.next()) concurrent = rs.getString(1);
+            }
+            if (concurrent == null) {
+                long start = System.nanoTime();
+                stmt.execute(script);
+                try (PreparedStatement insert = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, description, checksum, execution_millis) "
+                                + "VALUES (?,?,?,?)")) {
+                    insert.setInt(1, migration.version());
+                    insert.setString(2, migration.description());
+                    insert.setString(3, checksum);
+                    insert.setLong(4, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    insert.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migration V" + migration.version() + " (" + migration.description()
+                    + ") failed: " + e.getMessage(), e.getSQLState(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        if (concurrent == null) return true;
+        verify(migration, concurrent, checksum);
+        return false;
+    }
+
+    private static void verify(Migration migration, String recorded, String checksum) throws SQLException {
+        if (!recorded.trim().equals(checksum)) {
+            throw new SQLException("Migration V" + migration.version() + " (" + migration.description()
+                    + ") was changed after it was applied to the database");
+        }
+    }
+
+    // Переводы строк нормализуются, чтобы checkout с CRLF не менял контрольную сумму
+    private static String checksum(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Migration(int version, String description, String resource) {
+        String load() throws SQLException {
+            try (InputStream is = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource)) {
+                if (is == null) throw new SQLException("SQL script not found: " + resource);
+                return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read SQL script " + resource + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
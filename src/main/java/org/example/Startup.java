@@ -0,0 +1,78 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Подготовка при запуске, которая идет в фоне, пока на экране окно входа: одно соединение суперпользователя
+// проверяет, что база существует, применяет недостающие миграции и читает первую страницу games вместе с версией
+// данных, от которой таблица потом получает изменения.
+// Страница читается правами суперпользователя, поэтому показывается только после успешного входа
+final class Startup {
+    private final CompletableFuture<Boolean> databaseExists = new CompletableFuture<>();
+    private final CompletableFuture<Void> schemaReady = new CompletableFuture<>();
+    private final CompletableFuture<FirstPage> firstPage = new CompletableFuture<>();
+
+    private Startup() {
+    }
+
+    static Startup begin() {
+        Startup startup = new Startup();
+        Thread.ofVirtual().name("startup").start(startup::run);
+        return startup;
+    }
+
+    // Блокирует до ответа сервера на подключение; это первое, что нужно знать при запуске
+    boolean databaseExists() {
+        return databaseExists.join();
+    }
+
+    void awaitSchema() throws SQLException {
+        try {
+            schemaReady.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException sql) throw sql;
+            throw e;
+        }
+    }
+
+    // null, если страница еще не прочитана или чтение не удалось: тогда таблица загрузит ее сама
+    FirstPage firstPage() {
+        return firstPage.getNow(null);
+    }
+
+    private void run() {
+        try (Connection conn = DatabaseInitializer.openAsSuperuser()) {
+            databaseExists.complete(true);
+            try {
+                SchemaMigrator.migrate(conn);
+                schemaReady.complete(null);
+            } catch (SQLException e) {
+                schemaReady.completeExceptionally(e);
+                return;
+            }
+            firstPage.complete(readFirstPage(conn));
+        } catch (SQLException e) {
+            // Как и прежде, любая ошибка подключения считается отсутствием базы: ее попробуют создать
+            databaseExists.complete(false);
+            schemaReady.complete(null);
+        } finally {
+            firstPage.complete(null);
+        }
+    }
+
+    private static FirstPage readFirstPage(Connection conn) {
+        try {
+            String version = DatabaseManager.readChangeVersion(conn);
+            return new FirstPage(
+                    DatabaseManager.readPage(conn, GameQuery.all(), null, 0, GameTableModel.PAGE_SIZE, null, null),
+                    version);
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    // version взята до чтения страницы, поэтому изменения после нее таблица не пропустит
+    record FirstPage(DatabaseManager.GamePage page, String version) {}
+}
@@ -0,0 +1,199 @@
+package org.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Кэш подготовленных выражений одного физического соединения. Закрытие выданного выражения возвращает его в кэш,
+// поэтому драйвер переиспользует именованное серверное выражение и не разбирает и не планирует запрос заново
+public final class StatementCache {
+    private final Connection physical;
+    private final int capacity;
+    private final Counters counters;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(Connection physical, int capacity, Counters counters) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.counters = counters;
+    }
+
+    PreparedStatement prepare(String sql, boolean callable, Connection owner) throws SQLException {
+        Entry entry = entries.get(sql);
+        if (entry != null && !entry.inUse) {
+            counters.hits.increment();
+            entry.inUse = true;
+            return lease(entry.statement, entry, callable, owner);
+        }
+        counters.misses.increment();
+        PreparedStatement statement = callable ? physical.prepareCall(sql) : physical.prepareStatement(sql);
+        // Тот же запрос уже выдан (вложенное использование) - выдаем одноразовое выражение
+        if (entry != null || capacity == 0) return lease(statement, null, callable, owner);
+
+        entry = new Entry(sql, statement);
+        entry.inUse = true;
+        entries.put(sql, entry);
+        for (Iterator<Entry> it = entries.values().iterator(); entries.size() > capacity && it.hasNext(); ) {
+            Entry eldest = it.next();
+            it.remove();
+            counters.evictions.increment();
+            if (eldest.inUse) {
+                eldest.evicted = true;
+            } else {
+                closeQuietly(eldest.statement);
+            }
+        }
+        return lease(statement, entry, callable, owner);
+    }
+
+    private PreparedStatement lease(PreparedStatement statement, Entry entry, boolean callable, Connection owner) {
+        Class<?> type = callable ? CallableStatement.class : PreparedStatement.class;
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{type}, new Lease(statement, entry, owner));
+    }
+
+    private void checkIn(PreparedStatement statement, Entry entry) {
+        if (entry == null) {
+            closeQuietly(statement);
+            return;
+        }
+        entry.inUse = false;
+        if (entry.evicted || entry.invalid || !reset(statement)) {
+            if (!entry.evicted) entries.remove(entry.sql, entry);
+            closeQuietly(statement);
+        }
+    }
+
+    // Возвращаем выражение в исходное состояние, чтобы следующий владелец не унаследовал настройки предыдущего
+    private static boolean reset(PreparedStatement statement) {
+        try {
+            ResultSet rs = statement.getResultSet();
+            if (rs != null) rs.close();
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            if (statement.getFetchSize() != 0) statement.setFetchSize(0);
+            if (statement.getMaxRows() != 0) statement.setMaxRows(0);
+            if (statement.getQueryTimeout() != 0) statement.setQueryTimeout(0);
+            return !statement.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // Запрос больше не совпадает с подготовленным на сервере: изменился тип результата или выражение пропало
+    private static boolean isStale(SQLException e) {
+        String state = e.getSQLState();
+        return "0A000".equals(state) || "26000".equals(state);
+    }
+
+    private static final class Entry {
+        final String sql;
+        final PreparedStatement statement;
+        boolean inUse;
+        boolean evicted;
+        boolean invalid;
+
+        Entry(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final Entry entry;
+        private final Connection owner;
+        private volatile boolean closed;
+
+        Lease(PreparedStatement statement, Entry entry, Connection owner) {
+            this.statement = statement;
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        checkIn(statement, entry);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || statement.isClosed();
+                }
+                case "getConnection" -> {
+                    return owner;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return statement.toString();
+                }
+                default -> {
+                    if (closed) {
+                        // Выражение могло уже перейти к другому владельцу: запоздалый cancel() не должен его задеть
+                        if (method.getName().equals("cancel")) return null;
+                        throw new SQLException("Statement is closed");
+                    }
+                }
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (entry != null && cause instanceof SQLException sql && isStale(sql)) {
+                    entry.invalid = true;
+                    counters.invalidations.increment();
+                }
+                throw cause;
+            }
+        }
+    }
+
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder invalidations = new LongAdder();
+
+        Stats snapshot() {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, long invalidations) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Statements: %.0f%% reused, %d prepared", hitRate() * 100, misses);
+        }
+    }
+}
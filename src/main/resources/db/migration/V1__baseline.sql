@@ -0,0 +1,260 @@
+-- Создание ролей
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_roles WHERE rolname = 'admin_role') THEN
+        CREATE ROLE admin_role WITH NOLOGIN CREATEROLE;
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_roles WHERE rolname = 'guest_role') THEN
+        CREATE ROLE guest_role NOLOGIN;
+    END IF;
+END $$;
+
+-- Создание таблицы
+CREATE TABLE IF NOT EXISTS games (
+    game_id INTEGER PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    release_date DATE,
+    rating DOUBLE PRECISION
+);
+
+-- Триграммный индекс для поиска подстроки в названии (ILIKE '%...%') и нечеткого поиска
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS games_title_trgm_idx ON games USING gin (title gin_trgm_ops);
+
+-- Процедура очистки таблицы
+CREATE OR REPLACE PROCEDURE clear_games_table()
+AS $$
+BEGIN
+    TRUNCATE TABLE games;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Процедура добавления игры
+CREATE OR REPLACE PROCEDURE add_game(
+    p_game_id INTEGER,
+    p_title VARCHAR(255),
+    p_release_date DATE,
+    p_rating DOUBLE PRECISION
+)
+AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM games WHERE game_id = p_game_id) THEN
+        RAISE EXCEPTION 'Game with ID % already exists', p_game_id;
+    END IF;
+    INSERT INTO games(game_id, title, release_date, rating)
+    VALUES (p_game_id, p_title, p_release_date, p_rating);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Уведомление клиентов об изменениях games (канал games_changed) для сброса их кэшей.
+-- Полезная нагрузка: ID измененных строк через запятую или '*', если строк слишком много или таблица очищена
+CREATE OR REPLACE FUNCTION notify_games_changed()
+RETURNS trigger
+AS $$
+DECLARE
+    changed INTEGER[];
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('games_changed', '*');
+        RETURN NULL;
+    ELSIF TG_OP = 'INSERT' THEN
+        SELECT array_agg(t.game_id) INTO changed FROM (SELECT game_id FROM new_rows LIMIT 501) t;
+    ELSIF TG_OP = 'DELETE' THEN
+        SELECT array_agg(t.game_id) INTO changed FROM (SELECT game_id FROM old_rows LIMIT 501) t;
+    ELSE
+        SELECT array_agg(t.game_id) INTO changed FROM (
+            SELECT game_id FROM old_rows UNION SELECT game_id FROM new_rows LIMIT 501) t;
+    END IF;
+    IF changed IS NOT NULL THEN
+        PERFORM pg_notify('games_changed',
+            CASE WHEN cardinality(changed) > 500 THEN '*' ELSE array_to_string(changed, ',') END);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS games_notify_insert ON games;
+CREATE TRIGGER games_notify_insert AFTER INSERT ON games
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+DROP TRIGGER IF EXISTS games_notify_update ON games;
+CREATE TRIGGER games_notify_update AFTER UPDATE ON games
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+DROP TRIGGER IF EXISTS games_notify_delete ON games;
+CREATE TRIGGER games_notify_delete AFTER DELETE ON games
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+DROP TRIGGER IF EXISTS games_notify_truncate ON games;
+CREATE TRIGGER games_notify_truncate AFTER TRUNCATE ON games
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+
+-- Функция поиска по названию
+-- Простая SQL-функция (STABLE, без SECURITY DEFINER) встраивается планировщиком в запрос,
+-- поэтому условие ILIKE обслуживается индексом games_title_trgm_idx
+CREATE OR REPLACE FUNCTION search_by_title(search_title VARCHAR(255))
+RETURNS TABLE (
+    game_id INTEGER,
+    title VARCHAR(255),
+    release_date DATE,
+    rating DOUBLE PRECISION
+)
+LANGUAGE sql STABLE PARALLEL SAFE
+SECURITY INVOKER
+AS $$
+    SELECT g.game_id, g.title, g.release_date, g.rating
+    FROM games g
+    WHERE g.title ILIKE '%' || search_title || '%';
+$$;
+
+-- Функция нечеткого поиска по названию с ранжированием (устойчива к опечаткам)
+-- Порог совпадения задается параметром pg_trgm.word_similarity_threshold (по умолчанию 0.6)
+CREATE OR REPLACE FUNCTION search_by_title_similar(search_title VARCHAR(255), max_results INTEGER DEFAULT 50)
+RETURNS TABLE (
+    game_id INTEGER,
+    title VARCHAR(255),
+    release_date DATE,
+    rating DOUBLE PRECISION,
+    score REAL
+)
+LANGUAGE sql STABLE PARALLEL SAFE
+SECURITY INVOKER
+AS $$
+    SELECT g.game_id, g.title, g.release_date, g.rating, word_similarity(search_title, g.title)
+    FROM games g
+    WHERE search_title <% g.title
+    ORDER BY 5 DESC, g.game_id
+    LIMIT max_results;
+$$;
+
+-- Процедура обновления игры
+CREATE OR REPLACE PROCEDURE update_game(
+    p_game_id INTEGER,
+    p_title VARCHAR(255),
+    p_release_date DATE,
+    p_rating DOUBLE PRECISION
+)
+AS $$
+BEGIN
+    UPDATE games
+    SET title = p_title, release_date = p_release_date, rating = p_rating
+    WHERE game_id = p_game_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Процедура удаления по названию
+CREATE OR REPLACE PROCEDURE delete_by_title(
+    p_title VARCHAR(255),
+    OUT rows_deleted INTEGER
+)
+AS $$
+BEGIN
+    DELETE FROM games WHERE title = p_title;
+    GET DIAGNOSTICS rows_deleted = ROW_COUNT;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Пакетное добавление игр: возвращает ID добавленных строк, уже существующие ID пропускаются
+CREATE OR REPLACE FUNCTION add_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS SETOF INTEGER
+AS $$
+    INSERT INTO games(game_id, title, release_date, rating)
+    SELECT * FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings)
+    ON CONFLICT (game_id) DO NOTHING
+    RETURNING game_id;
+$$ LANGUAGE sql;
+
+-- Пакетное добавление или обновление игр (при повторе ID в пакете побеждает последняя строка)
+CREATE OR REPLACE FUNCTION upsert_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS TABLE (game_id INTEGER, inserted BOOLEAN)
+AS $$
+    INSERT INTO games AS g (game_id, title, release_date, rating)
+    SELECT DISTINCT ON (u.id) u.id, u.title, u.release_date, u.rating
+    FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) WITH ORDINALITY
+         AS u(id, title, release_date, rating, n)
+    ORDER BY u.id, u.n DESC
+    ON CONFLICT (game_id) DO UPDATE
+        SET title = EXCLUDED.title, release_date = EXCLUDED.release_date, rating = EXCLUDED.rating
+    RETURNING g.game_id, (g.xmax = 0);
+$$ LANGUAGE sql;
+
+-- Пакетное обновление игр: возвращает ID обновленных строк
+CREATE OR REPLACE FUNCTION update_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS SETOF INTEGER
+AS $$
+    UPDATE games g
+    SET title = u.title, release_date = u.release_date, rating = u.rating
+    FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) AS u(id, title, release_date, rating)
+    WHERE g.game_id = u.id
+    RETURNING g.game_id;
+$$ LANGUAGE sql;
+
+-- Пакетное удаление по ID: возвращает ID удаленных строк
+CREATE OR REPLACE FUNCTION delete_games(p_game_ids INTEGER[])
+RETURNS SETOF INTEGER
+AS $$
+    DELETE FROM games WHERE game_id = ANY(p_game_ids)
+    RETURNING game_id;
+$$ LANGUAGE sql;
+
+-- Процедура создания пользователя
+CREATE OR REPLACE PROCEDURE create_db_user(
+    p_username VARCHAR(63),
+    p_password VARCHAR(63),
+    p_role VARCHAR(20)
+)
+AS $$
+BEGIN
+    IF 'admin_role' NOT IN (SELECT rolname FROM pg_roles WHERE pg_has_role(current_user, oid, 'member')) THEN
+        RAISE EXCEPTION 'Only administrators can create users';
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM pg_roles WHERE rolname = p_username) THEN
+        RAISE EXCEPTION 'User % already exists', p_username;
+    END IF;
+
+    EXECUTE format('CREATE USER %I WITH LOGIN PASSWORD %L', p_username, p_password);
+    IF p_role = 'admin' THEN
+        EXECUTE format('GRANT admin_role TO %I WITH ADMIN OPTION', p_username);
+    ELSIF p_role = 'guest' THEN
+        EXECUTE format('GRANT guest_role TO %I WITH ADMIN OPTION', p_username);
+    ELSE
+        RAISE EXCEPTION 'Invalid role: %', p_role;
+    END IF;
+    EXECUTE format('GRANT CONNECT ON DATABASE games_db TO %I', p_username);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Назначение прав
+GRANT ALL ON games TO admin_role;
+GRANT SELECT ON games TO guest_role;
+GRANT EXECUTE ON PROCEDURE clear_games_table TO admin_role;
+GRANT EXECUTE ON PROCEDURE add_game TO admin_role;
+GRANT EXECUTE ON FUNCTION search_by_title TO admin_role;
+GRANT EXECUTE ON FUNCTION search_by_title TO guest_role;
+GRANT EXECUTE ON FUNCTION search_by_title_similar TO admin_role;
+GRANT EXECUTE ON FUNCTION search_by_title_similar TO guest_role;
+GRANT EXECUTE ON PROCEDURE update_game TO admin_role;
+GRANT EXECUTE ON PROCEDURE delete_by_title TO admin_role;
+GRANT EXECUTE ON FUNCTION add_games TO admin_role;
+GRANT EXECUTE ON FUNCTION upsert_games TO admin_role;
+GRANT EXECUTE ON FUNCTION update_games TO admin_role;
+GRANT EXECUTE ON FUNCTION delete_games TO admin_role;
+GRANT EXECUTE ON PROCEDURE create_db_user TO admin_role;
+GRANT guest_role TO admin_role WITH ADMIN OPTION;
+GRANT SELECT ON schema_version TO admin_role, guest_role;
@@ -0,0 +1,159 @@
+-- Сводная статистика по games, которую триггеры поддерживают при каждом изменении таблицы:
+-- dimension 't' - все строки (key = 0), 'r' - строки с рейтингом в [key, key + 1), 'y' - строки с годом выпуска key.
+-- Каждый ключ разбит на 8 сегментов по номеру серверного процесса, чтобы одновременные транзакции
+-- не ждали друг друга на одной строке; при чтении сегменты суммируются
+CREATE TABLE IF NOT EXISTS games_stats (
+    dimension CHAR(1) NOT NULL,
+    key INTEGER NOT NULL,
+    shard SMALLINT NOT NULL,
+    games BIGINT NOT NULL,
+    rating_sum DOUBLE PRECISION NOT NULL,
+    PRIMARY KEY (dimension, key, shard)
+);
+
+-- Изменение статистики одной командой: строки delta уже сгруппированы по ключу
+CREATE OR REPLACE FUNCTION maintain_games_stats()
+RETURNS trigger
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+DECLARE
+    s SMALLINT := pg_backend_pid() % 8;
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        DELETE FROM games_stats;
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO games_stats AS st (dimension, key, shard, games, rating_sum)
+        SELECT k.dimension, k.key, s, count(*), coalesce(sum(n.rating), 0)
+        FROM new_rows n
+        CROSS JOIN LATERAL (VALUES ('t', 0),
+                                   ('r', floor(n.rating)::integer),
+                                   ('y', extract(year FROM n.release_date)::integer)) AS k(dimension, key)
+        WHERE k.key IS NOT NULL
+        GROUP BY k.dimension, k.key
+        ON CONFLICT (dimension, key, shard) DO UPDATE
+            SET games = st.games + EXCLUDED.games, rating_sum = st.rating_sum + EXCLUDED.rating_sum;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO games_stats AS st (dimension, key, shard, games, rating_sum)
+        SELECT k.dimension, k.key, s, -count(*), -coalesce(sum(o.rating), 0)
+        FROM old_rows o
+        CROSS JOIN LATERAL (VALUES ('t', 0),
+                                   ('r', floor(o.rating)::integer),
+                                   ('y', extract(year FROM o.release_date)::integer)) AS k(dimension, key)
+        WHERE k.key IS NOT NULL
+        GROUP BY k.dimension, k.key
+        ON CONFLICT (dimension, key, shard) DO UPDATE
+            SET games = st.games + EXCLUDED.games, rating_sum = st.rating_sum + EXCLUDED.rating_sum;
+    ELSE
+        -- Изменения, не затронувшие рейтинг и дату, взаимно гасятся и не пишут в games_stats
+        INSERT INTO games_stats AS st (dimension, key, shard, games, rating_sum)
+        SELECT k.dimension, k.key, s, sum(d.sign), coalesce(sum(d.sign * d.rating), 0)
+        FROM (SELECT rating, release_date, 1 AS sign FROM new_rows
+              UNION ALL
+              SELECT rating, release_date, -1 FROM old_rows) d
+        CROSS JOIN LATERAL (VALUES ('t', 0),
+                                   ('r', floor(d.rating)::integer),
+                                   ('y', extract(year FROM d.release_date)::integer)) AS k(dimension, key)
+        WHERE k.key IS NOT NULL
+        GROUP BY k.dimension, k.key
+        HAVING sum(d.sign) <> 0 OR coalesce(sum(d.sign * d.rating), 0) <> 0
+        ON CONFLICT (dimension, key, shard) DO UPDATE
+            SET games = st.games + EXCLUDED.games, rating_sum = st.rating_sum + EXCLUDED.rating_sum;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS games_stats_insert ON games;
+CREATE TRIGGER games_stats_insert AFTER INSERT ON games
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+DROP TRIGGER IF EXISTS games_stats_update ON games;
+CREATE TRIGGER games_stats_update AFTER UPDATE ON games
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+DROP TRIGGER IF EXISTS games_stats_delete ON games;
+CREATE TRIGGER games_stats_delete AFTER DELETE ON games
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+DROP TRIGGER IF EXISTS games_stats_truncate ON games;
+CREATE TRIGGER games_stats_truncate AFTER TRUNCATE ON games
+    FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+
+-- Начальное заполнение по существующим строкам; блокировка не дает записи проскочить между подсчетом и триггерами
+LOCK TABLE games IN SHARE ROW EXCLUSIVE MODE;
+DELETE FROM games_stats;
+INSERT INTO games_stats (dimension, key, shard, games, rating_sum)
+SELECT k.dimension, k.key, 0, count(*), coalesce(sum(g.rating), 0)
+FROM games g
+CROSS JOIN LATERAL (VALUES ('t', 0),
+                           ('r', floor(g.rating)::integer),
+                           ('y', extract(year FROM g.release_date)::integer)) AS k(dimension, key)
+WHERE k.key IS NOT NULL
+GROUP BY k.dimension, k.key;
+
+-- Индекс для лучших по рейтингу и для min/max без чтения таблицы
+CREATE INDEX IF NOT EXISTS games_rating_idx ON games (rating DESC NULLS LAST, game_id);
+
+-- Общая сводка: число игр, число игр с рейтингом, средний, минимальный и максимальный рейтинг
+CREATE OR REPLACE FUNCTION games_summary()
+RETURNS TABLE (games BIGINT, rated BIGINT, average_rating DOUBLE PRECISION,
+               min_rating DOUBLE PRECISION, max_rating DOUBLE PRECISION)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT coalesce(sum(st.games) FILTER (WHERE st.dimension = 't'), 0)::bigint,
+           coalesce(sum(st.games) FILTER (WHERE st.dimension = 'r'), 0)::bigint,
+           sum(st.rating_sum) FILTER (WHERE st.dimension = 'r')
+               / nullif(sum(st.games) FILTER (WHERE st.dimension = 'r'), 0),
+           (SELECT min(rating) FROM games),
+           (SELECT max(rating) FROM games)
+    FROM games_stats st
+    WHERE st.dimension IN ('t', 'r');
+$$;
+
+-- Распределение рейтинга по интервалам [bucket, bucket + 1)
+CREATE OR REPLACE FUNCTION games_rating_distribution()
+RETURNS TABLE (bucket INTEGER, games BIGINT)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT st.key, sum(st.games)::bigint
+    FROM games_stats st
+    WHERE st.dimension = 'r'
+    GROUP BY st.key
+    HAVING sum(st.games) > 0
+    ORDER BY st.key;
+$$;
+
+CREATE OR REPLACE FUNCTION games_per_year()
+RETURNS TABLE (release_year INTEGER, games BIGINT)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT st.key, sum(st.games)::bigint
+    FROM games_stats st
+    WHERE st.dimension = 'y'
+    GROUP BY st.key
+    HAVING sum(st.games) > 0
+    ORDER BY st.key;
+$$;
+
+-- Лучшие по рейтингу: читаются по индексу games_rating_idx, функция встраивается в запрос
+CREATE OR REPLACE FUNCTION top_rated_games(max_results INTEGER)
+RETURNS TABLE (game_id INTEGER, title VARCHAR(255), release_date DATE, rating DOUBLE PRECISION)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT g.game_id, g.title, g.release_date, g.rating
+    FROM games g
+    WHERE g.rating IS NOT NULL
+    ORDER BY g.rating DESC NULLS LAST, g.game_id
+    LIMIT max_results;
+$$;
+
+GRANT SELECT ON games_stats TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_summary TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_rating_distribution TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_per_year TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION top_rated_games TO admin_role, guest_role;
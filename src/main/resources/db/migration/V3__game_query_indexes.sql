@@ -0,0 +1,40 @@
+-- Индексы для GameQuery: по каждому ключу сортировки (ключ, game_id). Они обслуживают и порядок с продолжением
+-- по ключу, и фильтр по диапазону. Пустые дата и рейтинг индексируются как бесконечность, тем же выражением,
+-- что и в запросах, иначе планировщик не сопоставит условие с индексом. Фильтр по началу названия (ILIKE 'abc%')
+-- обслуживает триграммный индекс games_title_trgm_idx
+CREATE INDEX IF NOT EXISTS games_title_key_idx ON games (title, game_id);
+CREATE INDEX IF NOT EXISTS games_release_key_idx
+    ON games ((coalesce(release_date, 'infinity'::date)), game_id);
+CREATE INDEX IF NOT EXISTS games_rating_key_idx
+    ON games ((coalesce(rating, 'Infinity'::double precision)), game_id);
+
+-- games_rating_key_idx заменяет индекс рейтинга из V2: лучшие по рейтингу и min/max читаются по нему
+DROP INDEX IF EXISTS games_rating_idx;
+
+CREATE OR REPLACE FUNCTION top_rated_games(max_results INTEGER)
+RETURNS TABLE (game_id INTEGER, title VARCHAR(255), release_date DATE, rating DOUBLE PRECISION)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT g.game_id, g.title, g.release_date, g.rating
+    FROM games g
+    WHERE coalesce(g.rating, 'Infinity'::double precision) < 'Infinity'::double precision
+    ORDER BY coalesce(g.rating, 'Infinity'::double precision) DESC, g.game_id DESC
+    LIMIT max_results;
+$$;
+
+CREATE OR REPLACE FUNCTION games_summary()
+RETURNS TABLE (games BIGINT, rated BIGINT, average_rating DOUBLE PRECISION,
+               min_rating DOUBLE PRECISION, max_rating DOUBLE PRECISION)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT coalesce(sum(st.games) FILTER (WHERE st.dimension = 't'), 0)::bigint,
+           coalesce(sum(st.games) FILTER (WHERE st.dimension = 'r'), 0)::bigint,
+           sum(st.rating_sum) FILTER (WHERE st.dimension = 'r')
+               / nullif(sum(st.games) FILTER (WHERE st.dimension = 'r'), 0),
+           (SELECT min(coalesce(g.rating, 'Infinity'::double precision)) FROM games g
+            WHERE coalesce(g.rating, 'Infinity'::double precision) < 'Infinity'::double precision),
+           (SELECT max(coalesce(g.rating, 'Infinity'::double precision)) FROM games g
+            WHERE coalesce(g.rating, 'Infinity'::double precision) < 'Infinity'::double precision)
+    FROM games_stats st
+    WHERE st.dimension IN ('t', 'r');
+$$;
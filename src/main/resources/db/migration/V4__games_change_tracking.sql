@@ -0,0 +1,96 @@
+-- Отслеживание изменений для дельта-обновления клиентов. Версия - снимок pg_snapshot на момент чтения:
+-- изменение попадает в "изменения после версии", если записавшая его транзакция не видна в этом снимке.
+-- В отличие от счетчика из последовательности снимок учитывает порядок фиксации: транзакция, взявшая номер раньше,
+-- но зафиксированная позже, не потеряется
+--
+-- version - транзакция, последней записавшая строку. У строк, существовавших до миграции, версии нет (NULL):
+-- они видны в любом снимке, поэтому таблицу не приходится переписывать
+ALTER TABLE games ADD COLUMN IF NOT EXISTS version xid8;
+ALTER TABLE games ALTER COLUMN version SET DEFAULT pg_current_xact_id();
+CREATE INDEX IF NOT EXISTS games_version_idx ON games (version);
+
+-- Удаленные строки; запись о повторно удаленном id перезаписывается
+CREATE TABLE IF NOT EXISTS games_tombstones (
+    game_id INTEGER PRIMARY KEY,
+    version xid8 NOT NULL
+);
+CREATE INDEX IF NOT EXISTS games_tombstones_version_idx ON games_tombstones (version);
+
+-- Транзакция последнего TRUNCATE: по удаленным так строкам надгробий нет, клиент со снимком до нее
+-- должен перечитать таблицу целиком
+CREATE TABLE IF NOT EXISTS games_change_state (
+    id BOOLEAN PRIMARY KEY DEFAULT true CHECK (id),
+    reset_version xid8
+);
+INSERT INTO games_change_state (id, reset_version) VALUES (true, NULL) ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION games_set_version()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    NEW.version := pg_current_xact_id();
+    RETURN NEW;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS games_version_update ON games;
+CREATE TRIGGER games_version_update BEFORE UPDATE ON games
+    FOR EACH ROW EXECUTE FUNCTION games_set_version();
+
+CREATE OR REPLACE FUNCTION games_track_removal()
+RETURNS trigger
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        UPDATE games_change_state SET reset_version = pg_current_xact_id();
+        DELETE FROM games_tombstones;
+    ELSE
+        INSERT INTO games_tombstones AS t (game_id, version)
+        SELECT game_id, pg_current_xact_id() FROM old_rows
+        ON CONFLICT (game_id) DO UPDATE SET version = EXCLUDED.version;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS games_tombstone_delete ON games;
+CREATE TRIGGER games_tombstone_delete AFTER DELETE ON games
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+DROP TRIGGER IF EXISTS games_tombstone_truncate ON games;
+CREATE TRIGGER games_tombstone_truncate AFTER TRUNCATE ON games
+    FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+
+-- Строки, измененные и удаленные после снимка since. Условие version >= xmin снимка идет по индексу,
+-- поэтому стоимость зависит от числа изменений, а не от размера таблицы.
+-- Клиент сначала применяет удаления, затем строки: id, удаленный и добавленный заново, останется в таблице
+CREATE OR REPLACE FUNCTION games_changes_since(since pg_snapshot)
+RETURNS TABLE (game_id INTEGER, title VARCHAR(255), release_date DATE, rating DOUBLE PRECISION, deleted BOOLEAN)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT t.game_id, NULL::varchar(255), NULL::date, NULL::double precision, true
+    FROM games_tombstones t
+    WHERE t.version >= pg_snapshot_xmin(since) AND NOT pg_visible_in_snapshot(t.version, since)
+    UNION ALL
+    SELECT g.game_id, g.title, g.release_date, g.rating, false
+    FROM games g
+    WHERE g.version >= pg_snapshot_xmin(since) AND NOT pg_visible_in_snapshot(g.version, since);
+$$;
+
+-- true, если после снимка since таблицу очищали TRUNCATE
+CREATE OR REPLACE FUNCTION games_reset_since(since pg_snapshot)
+RETURNS BOOLEAN
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT coalesce(bool_or(s.reset_version IS NOT NULL AND NOT pg_visible_in_snapshot(s.reset_version, since)),
+                    false)
+    FROM games_change_state s;
+$$;
+
+GRANT SELECT ON games_tombstones, games_change_state TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_changes_since TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_reset_since TO admin_role, guest_role;
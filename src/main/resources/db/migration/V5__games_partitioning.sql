@@ -0,0 +1,376 @@
+-- Необязательное секционирование games по release_date: секция games_y<год> на каждые N лет и секция
+-- games_default для пустых дат и дат, для которых секции нет. Перевод таблицы выполняет partition_games(N),
+-- его вызывает SchemaMigrator при -Dgames.db.partitionYears=N; без этого games остается обычной таблицей,
+-- а функции ниже работают так же, как раньше.
+--
+-- Первичный ключ секционированной таблицы обязан включать release_date, а дата может быть пустой, поэтому
+-- уникальность game_id между секциями держит реестр games_ids. Поиск по game_id идет по индексу game_id каждой
+-- секции: секции крупные (по умолчанию десятилетие), и их немного
+
+-- Шаг секционирования в годах; строка есть только у секционированной таблицы
+CREATE TABLE IF NOT EXISTS games_partitioning (
+    id BOOLEAN PRIMARY KEY DEFAULT true CHECK (id),
+    years INTEGER NOT NULL CHECK (years > 0)
+);
+
+CREATE TABLE IF NOT EXISTS games_ids (
+    game_id INTEGER PRIMARY KEY
+);
+
+CREATE OR REPLACE FUNCTION games_partitioned()
+RETURNS BOOLEAN
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT EXISTS (SELECT 1 FROM games_partitioning);
+$$;
+
+-- Создает недостающие секции для дат p_dates. Строки этих лет, уже попавшие в games_default, переносятся
+-- в новую секцию до ее подключения. Вызывается перед записью: во время команды, пишущей в games,
+-- секцию подключить нельзя. Для годов до нашей эры секции не создаются, строки остаются в games_default
+CREATE OR REPLACE FUNCTION games_ensure_partitions(p_dates DATE[])
+RETURNS void
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+DECLARE
+    step INTEGER;
+    start_year INTEGER;
+    part TEXT;
+    lo DATE;
+    hi DATE;
+BEGIN
+    SELECT p.years INTO step FROM games_partitioning p;
+    IF step IS NULL THEN
+        RETURN;
+    END IF;
+    FOR start_year IN
+        SELECT DISTINCT floor(extract(year FROM d) / step)::integer * step
+        FROM unnest(p_dates) AS d
+        WHERE d IS NOT NULL AND d NOT IN ('infinity', '-infinity')
+    LOOP
+        CONTINUE WHEN start_year < 1;
+        part := 'games_y' || start_year;
+        CONTINUE WHEN to_regclass(part) IS NOT NULL;
+        -- Одновременные записи в одну новую эпоху: секцию создает первая, остальные ее дожидаются
+        PERFORM pg_advisory_xact_lock(hashtext('games_ensure_partitions'));
+        CONTINUE WHEN to_regclass(part) IS NOT NULL;
+        lo := make_date(start_year, 1, 1);
+        hi := make_date(start_year + step, 1, 1);
+        EXECUTE format('CREATE TABLE %I (LIKE games INCLUDING DEFAULTS)', part);
+        EXECUTE format('WITH moved AS (DELETE FROM games_default WHERE release_date >= %L AND release_date < %L '
+                       'RETURNING *) INSERT INTO %I SELECT * FROM moved', lo, hi, part);
+        EXECUTE format('ALTER TABLE games ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', part, lo, hi);
+    END LOOP;
+END;
+$$;
+
+-- Реестр game_id секционированной таблицы. Повтор game_id нарушает первичный ключ games_ids (23505),
+-- как раньше нарушал первичный ключ games
+CREATE OR REPLACE FUNCTION games_track_ids()
+RETURNS trigger
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        TRUNCATE games_ids;
+    ELSIF TG_OP = 'INSERT' THEN
+        INSERT INTO games_ids (game_id) SELECT game_id FROM new_rows;
+    ELSIF TG_OP = 'DELETE' THEN
+        DELETE FROM games_ids i USING old_rows o WHERE i.game_id = o.game_id;
+    ELSE
+        DELETE FROM games_ids i
+        USING (SELECT game_id FROM old_rows EXCEPT SELECT game_id FROM new_rows) o
+        WHERE i.game_id = o.game_id;
+        INSERT INTO games_ids (game_id) SELECT game_id FROM new_rows EXCEPT SELECT game_id FROM old_rows;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+-- Перевод games в секционированную таблицу с шагом p_years лет. Таблица блокируется на все время переноса;
+-- индексы строятся после копирования строк, триггеры и права создаются заново. Статистика, версии строк
+-- и надгробия не меняются: набор строк остается прежним
+CREATE OR REPLACE PROCEDURE partition_games(p_years INTEGER)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF p_years IS NULL OR p_years < 1 THEN
+        RAISE EXCEPTION 'Partition step must be a positive number of years: %', p_years;
+    END IF;
+    IF games_partitioned() THEN
+        RETURN;
+    END IF;
+
+    LOCK TABLE games IN ACCESS EXCLUSIVE MODE;
+    ALTER TABLE games RENAME TO games_unpartitioned;
+    CREATE TABLE games (
+        game_id INTEGER NOT NULL,
+        title VARCHAR(255) NOT NULL,
+        release_date DATE,
+        rating DOUBLE PRECISION,
+        version xid8 DEFAULT pg_current_xact_id()
+    ) PARTITION BY RANGE (release_date);
+    CREATE TABLE games_default PARTITION OF games DEFAULT;
+    INSERT INTO games_partitioning (years) VALUES (p_years);
+    PERFORM games_ensure_partitions(
+        ARRAY(SELECT DISTINCT release_date FROM games_unpartitioned) || current_date);
+
+    INSERT INTO games (game_id, title, release_date, rating, version)
+    SELECT game_id, title, release_date, rating, version FROM games_unpartitioned;
+    TRUNCATE games_ids;
+    INSERT INTO games_ids (game_id) SELECT game_id FROM games_unpartitioned;
+    DROP TABLE games_unpartitioned;
+
+    CREATE INDEX games_game_id_idx ON games (game_id);
+    CREATE INDEX games_title_trgm_idx ON games USING gin (title gin_trgm_ops);
+    CREATE INDEX games_title_key_idx ON games (title, game_id);
+    CREATE INDEX games_release_key_idx ON games ((coalesce(release_date, 'infinity'::date)), game_id);
+    CREATE INDEX games_rating_key_idx ON games ((coalesce(rating, 'Infinity'::double precision)), game_id);
+    CREATE INDEX games_version_idx ON games (version);
+
+    CREATE TRIGGER games_ids_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+
+    CREATE TRIGGER games_notify_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+
+    CREATE TRIGGER games_stats_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+
+    CREATE TRIGGER games_version_update BEFORE UPDATE ON games
+        FOR EACH ROW EXECUTE FUNCTION games_set_version();
+    CREATE TRIGGER games_tombstone_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+    CREATE TRIGGER games_tombstone_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+
+    GRANT ALL ON games TO admin_role;
+    GRANT SELECT ON games TO guest_role;
+    ANALYZE games;
+END;
+$$;
+
+-- Архивирование эпох, закончившихся до p_before: их секции отключаются от games целиком, без построчного
+-- удаления. Отключенная секция остается таблицей games_archive_y<год> (или удаляется при p_drop).
+-- Статистика уменьшается одним проходом по секции, клиенты перечитывают таблицу, как после TRUNCATE.
+-- Возвращает имена отключенных секций
+CREATE OR REPLACE FUNCTION archive_games_before(p_before DATE, p_drop BOOLEAN DEFAULT false)
+RETURNS SETOF TEXT
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+DECLARE
+    step INTEGER;
+    part RECORD;
+    s SMALLINT := pg_backend_pid() % 8;
+BEGIN
+    SELECT p.years INTO step FROM games_partitioning p;
+    IF step IS NULL THEN
+        RAISE EXCEPTION 'Table games is not partitioned: start the application with -Dgames.db.partitionYears';
+    END IF;
+    FOR part IN
+        SELECT c.relname, substr(c.relname, 8)::integer AS start_year
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'games'::regclass AND c.relname ~ '^games_y[0-9]+$'
+          AND make_date(substr(c.relname, 8)::integer + step, 1, 1) <= p_before
+        ORDER BY 2
+    LOOP
+        EXECUTE format('ALTER TABLE games DETACH PARTITION %I', part.relname);
+        EXECUTE format(
+            'INSERT INTO games_stats AS st (dimension, key, shard, games, rating_sum) '
+            'SELECT k.dimension, k.key, %s, -count(*), -coalesce(sum(o.rating), 0) FROM %I o '
+            'CROSS JOIN LATERAL (VALUES (''t'', 0), (''r'', floor(o.rating)::integer), '
+            '(''y'', extract(year FROM o.release_date)::integer)) AS k(dimension, key) '
+            'WHERE k.key IS NOT NULL GROUP BY k.dimension, k.key '
+            'ON CONFLICT (dimension, key, shard) DO UPDATE '
+            'SET games = st.games + EXCLUDED.games, rating_sum = st.rating_sum + EXCLUDED.rating_sum',
+            s, part.relname);
+        EXECUTE format('DELETE FROM games_ids i USING %I o WHERE i.game_id = o.game_id', part.relname);
+        IF p_drop THEN
+            EXECUTE format('DROP TABLE %I', part.relname);
+        ELSE
+            EXECUTE format('ALTER TABLE %I RENAME TO %I', part.relname, 'games_archive_y' || part.start_year);
+        END IF;
+        RETURN NEXT part.relname;
+    END LOOP;
+    IF FOUND THEN
+        UPDATE games_change_state SET reset_version = pg_current_xact_id();
+        PERFORM pg_notify('games_changed', '*');
+    END IF;
+END;
+$$;
+
+-- Пакетные функции с ON CONFLICT (game_id): у секционированной таблицы нет уникального индекса по game_id,
+-- поэтому там существование проверяется по games_ids. Одновременная вставка того же game_id тогда
+-- завершается ошибкой 23505, а не пропуском строки
+CREATE OR REPLACE FUNCTION add_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS SETOF INTEGER
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF NOT games_partitioned() THEN
+        RETURN QUERY
+        WITH added AS (
+            INSERT INTO games(game_id, title, release_date, rating)
+            SELECT * FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings)
+            ON CONFLICT (game_id) DO NOTHING
+            RETURNING games.game_id)
+        SELECT added.game_id FROM added;
+        RETURN;
+    END IF;
+    PERFORM games_ensure_partitions(p_release_dates);
+    RETURN QUERY
+    WITH added AS (
+        INSERT INTO games(game_id, title, release_date, rating)
+        SELECT DISTINCT ON (u.id) u.id, u.title, u.release_date, u.rating
+        FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) WITH ORDINALITY
+             AS u(id, title, release_date, rating, n)
+        WHERE NOT EXISTS (SELECT 1 FROM games_ids i WHERE i.game_id = u.id)
+        ORDER BY u.id, u.n
+        RETURNING games.game_id)
+    SELECT added.game_id FROM added;
+END;
+$$;
+
+CREATE OR REPLACE FUNCTION upsert_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS TABLE (game_id INTEGER, inserted BOOLEAN)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF NOT games_partitioned() THEN
+        RETURN QUERY
+        WITH merged AS (
+            INSERT INTO games AS g (game_id, title, release_date, rating)
+            SELECT DISTINCT ON (u.id) u.id, u.title, u.release_date, u.rating
+            FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) WITH ORDINALITY
+                 AS u(id, title, release_date, rating, n)
+            ORDER BY u.id, u.n DESC
+            -- По имени ограничения: game_id здесь еще и имя выходного параметра
+            ON CONFLICT ON CONSTRAINT games_pkey DO UPDATE
+                SET title = EXCLUDED.title, release_date = EXCLUDED.release_date, rating = EXCLUDED.rating
+            RETURNING g.game_id, (g.xmax = 0) AS inserted)
+        SELECT merged.game_id, merged.inserted FROM merged;
+        RETURN;
+    END IF;
+    PERFORM games_ensure_partitions(p_release_dates);
+    RETURN QUERY
+    WITH src AS (
+        SELECT DISTINCT ON (u.id) u.id, u.title, u.release_date, u.rating
+        FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) WITH ORDINALITY
+             AS u(id, title, release_date, rating, n)
+        ORDER BY u.id, u.n DESC
+    ), updated AS (
+        UPDATE games g
+        SET title = src.title, release_date = src.release_date, rating = src.rating
+        FROM src
+        WHERE g.game_id = src.id
+        RETURNING g.game_id
+    ), added AS (
+        INSERT INTO games (game_id, title, release_date, rating)
+        SELECT src.id, src.title, src.release_date, src.rating
+        FROM src
+        WHERE src.id NOT IN (SELECT updated.game_id FROM updated)
+        RETURNING games.game_id
+    )
+    SELECT updated.game_id, false FROM updated
+    UNION ALL
+    SELECT added.game_id, true FROM added;
+END;
+$$;
+
+-- Изменение даты может перевести строку в эпоху, для которой секции еще нет
+CREATE OR REPLACE FUNCTION update_games(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[]
+)
+RETURNS SETOF INTEGER
+AS $$
+    SELECT games_ensure_partitions(p_release_dates);
+    UPDATE games g
+    SET title = u.title, release_date = u.release_date, rating = u.rating
+    FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings) AS u(id, title, release_date, rating)
+    WHERE g.game_id = u.id
+    RETURNING g.game_id;
+$$ LANGUAGE sql;
+
+CREATE OR REPLACE PROCEDURE add_game(
+    p_game_id INTEGER,
+    p_title VARCHAR(255),
+    p_release_date DATE,
+    p_rating DOUBLE PRECISION
+)
+AS $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM games WHERE game_id = p_game_id) THEN
+        RAISE EXCEPTION 'Game with ID % already exists', p_game_id;
+    END IF;
+    PERFORM games_ensure_partitions(ARRAY[p_release_date]);
+    INSERT INTO games(game_id, title, release_date, rating)
+    VALUES (p_game_id, p_title, p_release_date, p_rating);
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE PROCEDURE update_game(
+    p_game_id INTEGER,
+    p_title VARCHAR(255),
+    p_release_date DATE,
+    p_rating DOUBLE PRECISION
+)
+AS $$
+BEGIN
+    PERFORM games_ensure_partitions(ARRAY[p_release_date]);
+    UPDATE games
+    SET title = p_title, release_date = p_release_date, rating = p_rating
+    WHERE game_id = p_game_id;
+END;
+$$ LANGUAGE plpgsql;
+
+GRANT SELECT ON games_partitioning, games_ids TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_partitioned TO admin_role, guest_role;
+GRANT EXECUTE ON FUNCTION games_ensure_partitions TO admin_role;
+GRANT EXECUTE ON FUNCTION archive_games_before TO admin_role;
@@ -0,0 +1,70 @@
+-- Изменения и удаления с проверкой версии строки для отложенной записи (EditQueue).
+-- Клиент передает для каждой строки снимок p_seen, на котором основано его изменение, и версию p_written
+-- своей последней записи этой строки. Строка меняется, только если после снимка ее никто не записывал
+-- или последней ее записал сам клиент; иначе она остается как есть и возвращается с conflict = true.
+-- Строки без версии (не менялись с миграции V4) и строки без p_seen считаются неизмененными
+
+CREATE OR REPLACE FUNCTION games_unchanged(p_version xid8, p_seen pg_snapshot, p_written xid8)
+RETURNS BOOLEAN
+LANGUAGE sql
+IMMUTABLE
+AS $$
+    SELECT p_version IS NULL OR p_seen IS NULL OR pg_visible_in_snapshot(p_version, p_seen)
+        OR coalesce(p_version = p_written, false);
+$$;
+
+-- Для каждой существующей строки пакета: conflict = false - строка изменена, true - оставлена из-за чужой записи.
+-- Строка, которую одновременно меняет другая транзакция, проверяется заново после ее фиксации
+CREATE OR REPLACE FUNCTION update_games_checked(
+    p_game_ids INTEGER[],
+    p_titles VARCHAR(255)[],
+    p_release_dates DATE[],
+    p_ratings DOUBLE PRECISION[],
+    p_seen pg_snapshot[],
+    p_written xid8[]
+)
+RETURNS TABLE (game_id INTEGER, conflict BOOLEAN)
+LANGUAGE plpgsql
+AS $$
+#variable_conflict use_column
+BEGIN
+    PERFORM games_ensure_partitions(p_release_dates);
+    RETURN QUERY
+    WITH u AS (
+        SELECT * FROM unnest(p_game_ids, p_titles, p_release_dates, p_ratings, p_seen, p_written)
+            AS u(id, title, release_date, rating, seen, written)
+    ), updated AS (
+        UPDATE games g
+        SET title = u.title, release_date = u.release_date, rating = u.rating
+        FROM u
+        WHERE g.game_id = u.id AND games_unchanged(g.version, u.seen, u.written)
+        RETURNING g.game_id
+    )
+    SELECT g.game_id, g.game_id NOT IN (SELECT updated.game_id FROM updated)
+    FROM games g JOIN u ON g.game_id = u.id;
+END;
+$$;
+
+CREATE OR REPLACE FUNCTION delete_games_checked(
+    p_game_ids INTEGER[],
+    p_seen pg_snapshot[],
+    p_written xid8[]
+)
+RETURNS TABLE (game_id INTEGER, conflict BOOLEAN)
+LANGUAGE sql
+AS $$
+    WITH u AS (
+        SELECT * FROM unnest(p_game_ids, p_seen, p_written) AS u(id, seen, written)
+    ), deleted AS (
+        DELETE FROM games g
+        USING u
+        WHERE g.game_id = u.id AND games_unchanged(g.version, u.seen, u.written)
+        RETURNING g.game_id
+    )
+    SELECT g.game_id, g.game_id NOT IN (SELECT deleted.game_id FROM deleted)
+    FROM games g JOIN u ON g.game_id = u.id;
+$$;
+
+GRANT EXECUTE ON FUNCTION games_unchanged TO admin_role;
+GRANT EXECUTE ON FUNCTION update_games_checked TO admin_role;
+GRANT EXECUTE ON FUNCTION delete_games_checked TO admin_role;
@@ -0,0 +1,120 @@
+-- Транзакция, вставившая строку. По ней клиент отличает вставку от изменения строки, которой нет у него
+-- в памяти: вставка добавляет строку в его выборку, а изменение существующей строки число строк не меняет.
+-- У строк, существовавших до миграции, значения нет (NULL): они считаются существовавшими всегда.
+-- UPDATE, в том числе перенос строки между секциями, значение не меняет
+ALTER TABLE games ADD COLUMN IF NOT EXISTS created xid8;
+ALTER TABLE games ALTER COLUMN created SET DEFAULT pg_current_xact_id();
+
+-- Как в V4, и inserted = true у строк, вставленных после снимка since. Тип результата меняется, поэтому
+-- функция создается заново; клиенты читают столбцы по имени, лишний столбец им не мешает
+DROP FUNCTION IF EXISTS games_changes_since(pg_snapshot);
+CREATE FUNCTION games_changes_since(since pg_snapshot)
+RETURNS TABLE (game_id INTEGER, title VARCHAR(255), release_date DATE, rating DOUBLE PRECISION, deleted BOOLEAN,
+               inserted BOOLEAN)
+LANGUAGE sql STABLE PARALLEL SAFE
+AS $$
+    SELECT t.game_id, NULL::varchar(255), NULL::date, NULL::double precision, true, false
+    FROM games_tombstones t
+    WHERE t.version >= pg_snapshot_xmin(since) AND NOT pg_visible_in_snapshot(t.version, since)
+    UNION ALL
+    SELECT g.game_id, g.title, g.release_date, g.rating, false,
+           g.created IS NOT NULL AND NOT pg_visible_in_snapshot(g.created, since)
+    FROM games g
+    WHERE g.version >= pg_snapshot_xmin(since) AND NOT pg_visible_in_snapshot(g.version, since);
+$$;
+
+-- Индексы, триггеры и права секционированной games. partition_games вызывает эту функцию после переноса
+-- строк; следующая миграция, меняющая индексы или триггеры games, заменяет только ее
+CREATE OR REPLACE FUNCTION games_partitioned_setup()
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    CREATE INDEX games_game_id_idx ON games (game_id);
+    CREATE INDEX games_title_trgm_idx ON games USING gin (title gin_trgm_ops);
+    CREATE INDEX games_title_key_idx ON games (title, game_id);
+    CREATE INDEX games_release_key_idx ON games ((coalesce(release_date, 'infinity'::date)), game_id);
+    CREATE INDEX games_rating_key_idx ON games ((coalesce(rating, 'Infinity'::double precision)), game_id);
+    CREATE INDEX games_version_idx ON games (version);
+
+    CREATE TRIGGER games_ids_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+    CREATE TRIGGER games_ids_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_ids();
+
+    CREATE TRIGGER games_notify_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+    CREATE TRIGGER games_notify_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION notify_games_changed();
+
+    CREATE TRIGGER games_stats_insert AFTER INSERT ON games
+        REFERENCING NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_update AFTER UPDATE ON games
+        REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+    CREATE TRIGGER games_stats_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION maintain_games_stats();
+
+    CREATE TRIGGER games_version_update BEFORE UPDATE ON games
+        FOR EACH ROW EXECUTE FUNCTION games_set_version();
+    CREATE TRIGGER games_tombstone_delete AFTER DELETE ON games
+        REFERENCING OLD TABLE AS old_rows
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+    CREATE TRIGGER games_tombstone_truncate AFTER TRUNCATE ON games
+        FOR EACH STATEMENT EXECUTE FUNCTION games_track_removal();
+
+    GRANT ALL ON games TO admin_role;
+    GRANT SELECT ON games TO guest_role;
+END;
+$$;
+
+-- Как в V5, но столбцы секционированной таблицы берутся из прежней (LIKE), а индексы и триггеры
+-- создает games_partitioned_setup: новый столбец больше не требует переписывать процедуру
+CREATE OR REPLACE PROCEDURE partition_games(p_years INTEGER)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF p_years IS NULL OR p_years < 1 THEN
+        RAISE EXCEPTION 'Partition step must be a positive number of years: %', p_years;
+    END IF;
+    IF games_partitioned() THEN
+        RETURN;
+    END IF;
+
+    LOCK TABLE games IN ACCESS EXCLUSIVE MODE;
+    ALTER TABLE games RENAME TO games_unpartitioned;
+    CREATE TABLE games (LIKE games_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (release_date);
+    CREATE TABLE games_default PARTITION OF games DEFAULT;
+    INSERT INTO games_partitioning (years) VALUES (p_years);
+    PERFORM games_ensure_partitions(
+        ARRAY(SELECT DISTINCT release_date FROM games_unpartitioned) || current_date);
+
+    INSERT INTO games SELECT * FROM games_unpartitioned;
+    TRUNCATE games_ids;
+    INSERT INTO games_ids (game_id) SELECT game_id FROM games_unpartitioned;
+    DROP TABLE games_unpartitioned;
+
+    PERFORM games_partitioned_setup();
+    ANALYZE games;
+END;
+$$;
+
+GRANT EXECUTE ON FUNCTION games_changes_since TO admin_role, guest_role;
@@ -0,0 +1,81 @@
+-- Эпоха, уже отправленная в архив, может снова получить секцию games_y<год>, если в нее записали строку
+-- (games_ensure_partitions). Повторное архивирование такой эпохи падало на переименовании: таблица
+-- games_archive_y<год> уже есть, и откатывался весь вызов. Теперь следующий архив той же эпохи получает
+-- имя games_archive_y<год>_2, _3 и т.д.; прежние архивы не трогаются
+CREATE OR REPLACE FUNCTION games_archive_name(p_start_year INTEGER)
+RETURNS TEXT
+LANGUAGE plpgsql STABLE
+AS $$
+DECLARE
+    archive TEXT := 'games_archive_y' || p_start_year;
+    n INTEGER := 1;
+BEGIN
+    WHILE to_regclass(quote_ident(archive)) IS NOT NULL LOOP
+        n := n + 1;
+        archive := 'games_archive_y' || p_start_year || '_' || n;
+    END LOOP;
+    RETURN archive;
+END;
+$$;
+
+-- Отключение одной секции из archive_games_before: статистика уменьшается одним проходом по секции,
+-- ее game_id уходят из games_ids, сама секция удаляется или становится архивом games_archive_name
+CREATE OR REPLACE FUNCTION games_archive_partition(p_part TEXT, p_start_year INTEGER, p_drop BOOLEAN)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    s SMALLINT := pg_backend_pid() % 8;
+BEGIN
+    EXECUTE format('ALTER TABLE games DETACH PARTITION %I', p_part);
+    EXECUTE format(
+        'INSERT INTO games_stats AS st (dimension, key, shard, games, rating_sum) '
+        'SELECT k.dimension, k.key, %s, -count(*), -coalesce(sum(o.rating), 0) FROM %I o '
+        'CROSS JOIN LATERAL (VALUES (''t'', 0), (''r'', floor(o.rating)::integer), '
+        '(''y'', extract(year FROM o.release_date)::integer)) AS k(dimension, key) '
+        'WHERE k.key IS NOT NULL GROUP BY k.dimension, k.key '
+        'ON CONFLICT (dimension, key, shard) DO UPDATE '
+        'SET games = st.games + EXCLUDED.games, rating_sum = st.rating_sum + EXCLUDED.rating_sum',
+        s, p_part);
+    EXECUTE format('DELETE FROM games_ids i USING %I o WHERE i.game_id = o.game_id', p_part);
+    IF p_drop THEN
+        EXECUTE format('DROP TABLE %I', p_part);
+    ELSE
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', p_part, games_archive_name(p_start_year));
+    END IF;
+END;
+$$;
+
+-- Как в V5, но каждая секция отключается через games_archive_partition: следующая миграция, меняющая
+-- архивирование секции или имя архива, заменяет только эту функцию или games_archive_name
+CREATE OR REPLACE FUNCTION archive_games_before(p_before DATE, p_drop BOOLEAN DEFAULT false)
+RETURNS SETOF TEXT
+LANGUAGE plpgsql
+SECURITY DEFINER
+SET search_path = public
+AS $$
+DECLARE
+    step INTEGER;
+    part RECORD;
+BEGIN
+    SELECT p.years INTO step FROM games_partitioning p;
+    IF step IS NULL THEN
+        RAISE EXCEPTION 'Table games is not partitioned: start the application with -Dgames.db.partitionYears';
+    END IF;
+    FOR part IN
+        SELECT c.relname, substr(c.relname, 8)::integer AS start_year
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'games'::regclass AND c.relname ~ '^games_y[0-9]+$'
+          AND make_date(substr(c.relname, 8)::integer + step, 1, 1) <= p_before
+        ORDER BY 2
+    LOOP
+        PERFORM games_archive_partition(part.relname, part.start_year, p_drop);
+        RETURN NEXT part.relname;
+    END LOOP;
+    IF FOUND THEN
+        UPDATE games_change_state SET reset_version = pg_current_xact_id();
+        PERFORM pg_notify('games_changed', '*');
+    END IF;
+END;
+$$;
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditQueueTest {
+    private static final DatabaseManager.Game FIRST = new DatabaseManager.Game(7, "Doom", "1993-12-10", 8.5);
+    private static final DatabaseManager.Game SECOND = new DatabaseManager.Game(7, "Doom II", "1994-10-10", null);
+
+    @TempDir
+    Path dir;
+
+    // Таблица слияния: предыдущая правка x следующая правка того же game_id
+    @Test
+    void addThenAddKeepsFirstAdd() {
+        assertEquals(add(FIRST), merged(add(FIRST), add(SECOND)));
+    }
+
+    @Test
+    void addThenUpdateIsAddWithNewData() {
+        assertEquals(add(SECOND), merged(add(FIRST), update(SECOND, "s2")));
+    }
+
+    @Test
+    void addThenDeleteLeavesNothing() {
+        assertNull(merged(add(FIRST), delete("s2")));
+    }
+
+    @Test
+    void updateThenAddKeepsUpdate() {
+        assertEquals(update(FIRST, "s1"), merged(update(FIRST, "s1"), add(SECOND)));
+    }
+
+    @Test
+    void updateThenUpdateKeepsFirstSnapshot() {
+        assertEquals(update(SECOND, "s1"), merged(update(FIRST, "s1"), update(SECOND, "s2")));
+    }
+
+    @Test
+    void updateThenDeleteKeepsFirstSnapshot() {
+        assertEquals(delete("s1"), merged(update(FIRST, "s1"), delete("s2")));
+    }
+
+    @Test
+    void deleteThenAddIsUpdateFromFirstSnapshot() {
+        assertEquals(update(SECOND, "s1"), merged(delete("s1"), add(SECOND)));
+    }
+
+    @Test
+    void deleteThenUpdateKeepsDelete() {
+        assertEquals(delete("s1"), merged(delete("s1"), update(SECOND, "s2")));
+    }
+
+    @Test
+    void deleteThenDeleteKeepsDelete() {
+        assertEquals(delete("s1"), merged(delete("s1"), delete("s2")));
+    }
+
+    @Test
+    void mergeKeepsOtherGames() {
+        Map<Integer, EditQueue.Edit> edits = new LinkedHashMap<>();
+        DatabaseManager.Game other = new DatabaseManager.Game(3, "Quake", "1996-06-22", 8.0);
+        EditQueue.merge(edits, add(FIRST));
+        EditQueue.merge(edits, new EditQueue.Edit(EditQueue.Kind.ADD, 3, other, null));
+        EditQueue.merge(edits, delete("s1"));
+        assertEquals(List.of(3), List.copyOf(edits.keySet()));
+    }
+
+    // Недописанная последняя строка пропускается, правки до нее восстанавливаются
+    @Test
+    void journalSkipsTruncatedLastLine() throws IOException {
+        Path journal = dir.resolve("edits.journal");
+        Files.writeString(journal, """
+                {"kind":"ADD","id":7,"title":"Doom","releaseDate":"1993-12-10","rating":8.5,"seen":null}
+                {"kind":"UPDATE","id":3,"title":"Quake","releaseDate":"1996-06-22","rating":null,"seen":"s1"}
+                {"kind":"DELETE","id":7,"title":null,"releaseDate":nu""", StandardCharsets.UTF_8);
+
+        Map<Integer, EditQueue.Edit> edits = EditQueue.readJournal(journal);
+
+        assertEquals(List.of(7, 3), List.copyOf(edits.keySet()));
+        assertEquals(add(FIRST), edits.get(7));
+        assertEquals(new EditQueue.Edit(EditQueue.Kind.UPDATE, 3,
+                new DatabaseManager.Game(3, "Quake", "1996-06-22", null), "s1"), edits.get(3));
+    }
+
+    @Test
+    void missingJournalHasNoEdits() throws IOException {
+        assertTrue(EditQueue.readJournal(dir.resolve("missing.journal")).isEmpty());
+    }
+
+    private static EditQueue.Edit merged(EditQueue.Edit previous, EditQueue.Edit next) {
+        Map<Integer, EditQueue.Edit> edits = new LinkedHashMap<>();
+        EditQueue.merge(edits, previous);
+        EditQueue.merge(edits, next);
+        return edits.get(7);
+    }
+
+    private static EditQueue.Edit add(DatabaseManager.Game game) {
+        return new EditQueue.Edit(EditQueue.Kind.ADD, game.id(), game, null);
+    }
+
+    private static EditQueue.Edit update(DatabaseManager.Game game, String seen) {
+        return new EditQueue.Edit(EditQueue.Kind.UPDATE, game.id(), game, seen);
+    }
+
+    private static EditQueue.Edit delete(String seen) {
+        return new EditQueue.Edit(EditQueue.Kind.DELETE, 7, null, seen);
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameQueryTest {
+    private static final GameQuery BY_RATING = GameQuery.all().sortedBy(GameQuery.Sort.RATING, true);
+
+    @Test
+    void firstPageById() {
+        List<Object> params = new ArrayList<>();
+        String sql = GameQuery.all().pageSql(null, 0, 200, params);
+
+        assertEquals("SELECT game_id, title, release_date, rating, game_id AS sort_key FROM games"
+                + " ORDER BY game_id OFFSET ? LIMIT ?", sql);
+        assertEquals(List.of(0, 201), params);
+    }
+
+    // Ключ продолжения из страницы подставляется в сравнение кортежей по ключу сортировки и game_id
+    @Test
+    void continuationRoundTrip() {
+        String token = BY_RATING.continuation(42, "7.5");
+        List<Object> params = new ArrayList<>();
+        String sql = BY_RATING.pageSql(token, 0, 50, params);
+
+        assertTrue(sql.contains("WHERE (coalesce(rating, 'Infinity'::double precision), game_id)"
+                + " < (?::double precision, ?)"), sql);
+        assertTrue(sql.endsWith(" ORDER BY coalesce(rating, 'Infinity'::double precision) DESC, game_id DESC"
+                + " OFFSET ? LIMIT ?"), sql);
+        assertEquals(List.of("7.5", 42, 0, 51), params);
+    }
+
+    @Test
+    void titleContinuationKeepsColons() {
+        GameQuery byTitle = GameQuery.all().sortedBy(GameQuery.Sort.TITLE, false);
+        List<Object> params = new ArrayList<>();
+        byTitle.pageSql(byTitle.continuation(3, "Doom: Eternal"), 0, 10, params);
+
+        assertEquals(List.of("Doom: Eternal", 3, 0, 11), params);
+    }
+
+    @Test
+    void continuationFromOtherOrderIsRejected() {
+        String token = BY_RATING.continuation(42, "7.5");
+        GameQuery ascending = GameQuery.all().sortedBy(GameQuery.Sort.RATING, false);
+
+        assertThrows(IllegalArgumentException.class, () -> ascending.pageSql(token, 0, 10, new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class,
+                () -> GameQuery.all().pageSql(token, 0, 10, new ArrayList<>()));
+    }
+
+    @Test
+    void malformedContinuationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BY_RATING.pageSql("not base64!", 0, 10, new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class,
+                () -> BY_RATING.pageSql(BY_RATING.continuation(1, "abc"), 0, 10, new ArrayList<>()));
+        GameQuery byDate = GameQuery.all().sortedBy(GameQuery.Sort.RELEASE_DATE, false);
+        assertThrows(IllegalArgumentException.class,
+                () -> byDate.pageSql(byDate.continuation(1, "2020-13-01"), 0, 10, new ArrayList<>()));
+    }
+
+    // Символы шаблона в названии ищутся буквально
+    @Test
+    void titleIsEscaped() {
+        GameQuery query = new GameQuery("50%_off\\", "A_", null, null, null, null, null, false);
+        List<Object> params = new ArrayList<>();
+        String sql = query.pageSql(null, 0, 10, params);
+
+        assertTrue(sql.contains("WHERE title ILIKE ? AND title ILIKE ?"), sql);
+        assertEquals(List.of("%50\\%\\_off\\\\%", "A\\_%", 0, 11), params);
+    }
+
+    @Test
+    void rangesUseIndexExpressions() {
+        GameQuery query = new GameQuery(null, null, LocalDate.of(2000, 1, 1), null, 7.0, null, null, false);
+        List<Object> params = new ArrayList<>();
+        String sql = query.countSql(1000, params);
+
+        assertEquals("SELECT count(*) FROM (SELECT 1 FROM games WHERE"
+                + " coalesce(release_date, 'infinity'::date) >= ?"
+                + " AND coalesce(release_date, 'infinity'::date) < 'infinity'::date"
+                + " AND release_date >= ?"
+                + " AND coalesce(rating, 'Infinity'::double precision) >= ?"
+                + " AND coalesce(rating, 'Infinity'::double precision) < 'Infinity'::double precision"
+                + " LIMIT ?) t", sql);
+        assertEquals(List.of(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 1, 1), 7.0, 1000L), params);
+    }
+
+    @Test
+    void anchorsReadEveryStepRow() {
+        List<Object> params = new ArrayList<>();
+        String sql = GameQuery.all().anchorSql(null, 4000, 200, params);
+
+        assertEquals("SELECT game_id, sort_key FROM (SELECT game_id, game_id AS sort_key, row_number() OVER"
+                + " (ORDER BY game_id) AS n FROM games ORDER BY game_id LIMIT ?) t WHERE n % ? = 0 ORDER BY n", sql);
+        assertEquals(List.of(4000, 200), params);
+    }
+
+    @Test
+    void infiniteRatingBoundIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new GameQuery(null, null, null, null, Double.NaN, null, null, false));
+    }
+
+    // Строка без рейтинга не проходит границы рейтинга и стоит после всех при сортировке по возрастанию
+    @Test
+    void missingRatingMatchesAndOrder() {
+        DatabaseManager.Game unrated = new DatabaseManager.Game(1, "Doom", null, null);
+        DatabaseManager.Game rated = new DatabaseManager.Game(2, "DOOM II", "1994-10-10", 8.0);
+        GameQuery minRating = new GameQuery("doom", null, null, null, 5.0, null, null, false);
+
+        assertFalse(minRating.matches(unrated));
+        assertTrue(minRating.matches(rated));
+        assertTrue(GameQuery.byTitle("oom").matches(unrated));
+        assertFalse(new GameQuery(null, null, LocalDate.of(1990, 1, 1), null, null, null, null, false)
+                .matches(unrated));
+        GameQuery ascending = GameQuery.all().sortedBy(GameQuery.Sort.RATING, false);
+        assertTrue(ascending.order().compare(rated, unrated) < 0);
+        assertTrue(BY_RATING.order().compare(unrated, rated) < 0);
+    }
+}
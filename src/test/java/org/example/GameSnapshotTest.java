@@ -0,0 +1,94 @@
+package org.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GameSnapshotTest {
+    @TempDir
+    Path dir;
+
+    private GameSnapshot snapshot;
+
+    @BeforeEach
+    void writeSnapshot() throws IOException {
+        snapshot = GameSnapshot.write(dir.resolve("games.snapshot"), "100:100:", List.of(
+                new DatabaseManager.Game(1, "Portal", "2007-10-10", 9.0),
+                new DatabaseManager.Game(2, "Portal 2", "2011-04-19", 9.5),
+                new DatabaseManager.Game(3, "Half-Life", null, 9.2),
+                new DatabaseManager.Game(4, "Doom", "1993-12-10", null),
+                new DatabaseManager.Game(5, "DOOM Eternal", "2020-03-20", 8.8)));
+    }
+
+    @Test
+    void emptyNeedleFindsAll() {
+        assertEquals(List.of(1, 2, 3, 4, 5), ids(snapshot, ""));
+    }
+
+    // Одна и две буквы ищутся без триграмм
+    @Test
+    void oneCharacterNeedle() {
+        assertEquals(List.of(1, 2, 4, 5), ids(snapshot, "o"));
+        assertEquals(List.of(2), ids(snapshot, "2"));
+        assertEquals(List.of(3), ids(snapshot, "-"));
+        assertEquals(List.of(), ids(snapshot, "z"));
+    }
+
+    @Test
+    void twoCharacterNeedle() {
+        assertEquals(List.of(4, 5), ids(snapshot, "oo"));
+        assertEquals(List.of(4, 5), ids(snapshot, "dO"));
+        assertEquals(List.of(2), ids(snapshot, " 2"));
+        assertEquals(List.of(), ids(snapshot, "lp"));
+    }
+
+    @Test
+    void threeOrMoreCharacterNeedle() {
+        assertEquals(List.of(1, 2), ids(snapshot, "ORT"));
+        assertEquals(List.of(2), ids(snapshot, "portal 2"));
+        assertEquals(List.of(3), ids(snapshot, "half-life"));
+        assertEquals(List.of(5), ids(snapshot, "oom e"));
+        assertEquals(List.of(), ids(snapshot, "portal 3"));
+    }
+
+    @Test
+    void rowsRoundTrip() {
+        assertEquals(new DatabaseManager.Game(3, "Half-Life", null, 9.2), snapshot.getById(3));
+        assertNull(snapshot.getById(4).rating());
+        assertNull(snapshot.getById(6));
+        assertEquals("100:100:", snapshot.version());
+    }
+
+    // Изменения поверх файла: удаленная строка пропадает, измененная ищется по новому названию,
+    // вставленная встает по game_id
+    @Test
+    void searchSeesChanges() throws IOException {
+        GameSnapshot changed = snapshot.apply(new DatabaseManager.Changes("200:200:", false, List.of(
+                new DatabaseManager.Game(4, "Quake", "1996-06-22", 8.0),
+                new DatabaseManager.Game(6, "Doom 64", "1997-04-04", 7.9)), Set.of(1), Set.of(6)));
+
+        assertEquals(List.of(2, 5, 6), ids(changed, "o"));
+        assertEquals(List.of(5, 6), ids(changed, "doo"));
+        assertEquals(List.of(4), ids(changed, "qu"));
+        assertEquals(List.of(2, 3, 4, 5, 6), ids(changed, ""));
+        assertNull(changed.getById(1));
+
+        GameSnapshot compacted = changed.compact();
+        assertEquals(List.of(5, 6), ids(compacted, "doo"));
+        assertEquals(List.of(2, 3, 4, 5, 6), ids(compacted, ""));
+        assertEquals("200:200:", compacted.version());
+    }
+
+    private static List<Integer> ids(GameSnapshot snapshot, String needle) {
+        return Arrays.stream(snapshot.search(needle)).mapToObj(row -> snapshot.get(row).id()).toList();
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+    @Test
+    void smallValuesHaveOwnBuckets() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(31, LatencyHistogram.bucketOf(31));
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(33, LatencyHistogram.upperBoundOf(32));
+    }
+
+    // Значение лежит между границами своей и предыдущей корзины, ширина корзины - не больше 1/16 значения
+    @Test
+    void bucketBoundsContainValue() {
+        Random random = new Random(12);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            long lower = bucket > 0 ? LatencyHistogram.upperBoundOf(bucket - 1) + 1 : 0;
+            assertTrue(lower <= value && value <= upper, value + " not in [" + lower + ", " + upper + "]");
+            assertTrue(upper - lower <= lower / 16, "bucket " + bucket + " is too wide");
+        }
+    }
+
+    @Test
+    void boundariesAreContiguous() {
+        for (int bucket = 1; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().percentileNanos(99));
+        for (long nanos = 1; nanos <= 10_000; nanos++) {
+            histogram.record(nanos * 1_000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.count());
+        assertEquals(10_000_000, snapshot.maxNanos());
+        assertEquals(5_000_500, snapshot.meanNanos());
+        long median = snapshot.percentileNanos(50);
+        assertTrue(median >= 5_000_000 && median <= 5_000_000 + 5_000_000 / 16, "p50 = " + median);
+        // Верхняя граница последней корзины не выходит за максимум
+        assertEquals(10_000_000, snapshot.percentileNanos(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().count());
+    }
+}
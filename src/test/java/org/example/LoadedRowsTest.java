@@ -0,0 +1,171 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LoadedRowsTest {
+    private static final Comparator<DatabaseManager.Game> BY_ID = Comparator.comparingInt(DatabaseManager.Game::id);
+
+    @Test
+    void putKeepsBlocksApart() {
+        LoadedRows rows = new LoadedRows(BY_ID);
+        rows.put(0, games(10, 3));
+        rows.put(100, games(500, 2));
+
+        assertEquals(5, rows.size());
+        assertEquals(3, rows.firstUnloaded());
+        assertEquals(11, rows.get(1).id());
+        assertNull(rows.get(3));
+        assertEquals(501, rows.get(101).id());
+        assertEquals(2, rows.loaded(2, 101));
+        assertEquals(0, rows.first());
+        assertEquals(101, rows.last());
+    }
+
+    // Вставка и удаление сдвигают следующие блоки, но не строки перед местом вставки
+    @Test
+    void insertAndRemoveShiftFollowingRows() {
+        LoadedRows rows = new LoadedRows(BY_ID);
+        rows.put(0, games(10, 3));
+        rows.put(100, games(500, 2));
+
+        rows.insert(1, game(15));
+        assertEquals(List.of(10, 15, 11, 12), ids(rows, 0, 4));
+        assertEquals(List.of(500, 501), ids(rows, 101, 103));
+
+        rows.insert(50, null);
+        assertNull(rows.get(50));
+        assertEquals(List.of(500, 501), ids(rows, 102, 104));
+        assertEquals(4, rows.firstUnloaded());
+
+        rows.remove(0);
+        assertEquals(List.of(15, 11, 12), ids(rows, 0, 3));
+        assertEquals(List.of(500, 501), ids(rows, 101, 103));
+        assertEquals(5, rows.size());
+    }
+
+    @Test
+    void unloadSplitsBlock() {
+        LoadedRows rows = new LoadedRows(BY_ID);
+        rows.put(0, games(10, 6));
+        rows.unload(2, 4);
+
+        assertEquals(4, rows.size());
+        assertEquals(2, rows.firstUnloaded());
+        assertEquals(1, rows.loadedBefore(3));
+        assertEquals(14, rows.get(4).id());
+        assertEquals(-1, rows.rowOf(12));
+    }
+
+    @Test
+    void rowOfAndRowAfterFollowOrder() {
+        LoadedRows rows = new LoadedRows(BY_ID);
+        rows.put(0, games(10, 5));
+        rows.put(20, games(40, 5));
+
+        assertEquals(3, rows.rowOf(13));
+        assertEquals(22, rows.rowOf(42));
+        assertEquals(-1, rows.rowOf(30));
+        // Первая загруженная строка после game_id 30 - первая строка второго блока
+        assertEquals(20, rows.rowAfter(game(30)));
+        assertEquals(2, rows.rowAfter(game(11)));
+        assertEquals(-1, rows.rowAfter(game(99)));
+    }
+
+    // Замененная строка с тем же game_id ищется по новому экземпляру
+    @Test
+    void setReplacesIndexedGame() {
+        LoadedRows rows = new LoadedRows(BY_ID);
+        rows.put(0, games(10, 3));
+        DatabaseManager.Game renamed = new DatabaseManager.Game(11, "renamed", null, null);
+        rows.set(1, renamed);
+
+        assertSame(renamed, rows.get(1));
+        assertEquals(1, rows.rowOf(11));
+        assertEquals(3, rows.size());
+    }
+
+    // Случайные операции сверяются с номерами строк в TreeMap, где сдвиг - перенос всего хвоста
+    @Test
+    void matchesReferenceOnRandomOperations() {
+        Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            LoadedRows rows = new LoadedRows(BY_ID);
+            TreeMap<Integer, DatabaseManager.Game> reference = new TreeMap<>();
+            int nextId = 0;
+            for (int step = 0; step < 100; step++) {
+                int row = random.nextInt(60);
+                switch (random.nextInt(5)) {
+                    case 0 -> {
+                        List<DatabaseManager.Game> page = new ArrayList<>();
+                        for (int i = 0, n = 1 + random.nextInt(8); i < n; i++) {
+                            page.add(game(nextId++));
+                            reference.put(row + i, page.getLast());
+                        }
+                        rows.put(row, page);
+                    }
+                    case 1 -> {
+                        rows.remove(row);
+                        reference.remove(row);
+                        shift(reference, row + 1, -1);
+                    }
+                    case 2 -> {
+                        DatabaseManager.Game game = random.nextBoolean() ? game(nextId++) : null;
+                        rows.insert(row, game);
+                        shift(reference, row, 1);
+                        if (game != null) reference.put(row, game);
+                    }
+                    case 3 -> {
+                        int to = row + random.nextInt(10);
+                        rows.unload(row, to);
+                        reference.subMap(row, to).clear();
+                    }
+                    default -> {
+                        int to = row + random.nextInt(20);
+                        assertEquals(reference.subMap(row, to).size(), rows.loaded(row, to));
+                    }
+                }
+                assertEquals(reference.size(), rows.size());
+                for (int i = 0; i < 80; i++) {
+                    assertSame(reference.get(i), rows.get(i));
+                    Integer before = reference.lowerKey(i);
+                    assertEquals(before != null ? before : -1, rows.loadedBefore(i));
+                }
+                for (Map.Entry<Integer, DatabaseManager.Game> entry : reference.entrySet()) {
+                    assertEquals(entry.getKey(), rows.rowOf(entry.getValue().id()));
+                }
+            }
+        }
+    }
+
+    private static void shift(TreeMap<Integer, DatabaseManager.Game> reference, int from, int delta) {
+        Map<Integer, DatabaseManager.Game> tail = reference.tailMap(from, true);
+        List<Map.Entry<Integer, DatabaseManager.Game>> moved = tail.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey() + delta, entry.getValue())).toList();
+        tail.clear();
+        moved.forEach(entry -> reference.put(entry.getKey(), entry.getValue()));
+    }
+
+    private static List<Integer> ids(LoadedRows rows, int from, int to) {
+        return IntStream.range(from, to).mapToObj(row -> rows.get(row).id()).toList();
+    }
+
+    private static List<DatabaseManager.Game> games(int firstId, int count) {
+        return IntStream.range(firstId, firstId + count).mapToObj(LoadedRowsTest::game).toList();
+    }
+
+    private static DatabaseManager.Game game(int id) {
+        return new DatabaseManager.Game(id, "Game " + id, null, null);
+    }
+}